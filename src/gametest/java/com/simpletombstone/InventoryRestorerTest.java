@@ -0,0 +1,105 @@
+package com.simpletombstone;
+
+import com.mojang.authlib.GameProfile;
+import net.fabricmc.fabric.api.entity.FakePlayer;
+import net.fabricmc.fabric.api.event.player.UseBlockCallback;
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.block.Blocks;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.Hand;
+import net.minecraft.util.hit.BlockHitResult;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.Vec3d;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * 领取墓碑后物品回到原槽位的 GameTest：快捷栏、主背包、盔甲栏和副手
+ * 同一种可堆叠物品分散在多个槽位时，创建墓碑后仍应各自放回原来的槽位，不会合并到先出现的槽位
+ * 同时检查墓碑数据经过一次 NBT 编码再解码后保持不变，即重启后读取存档领取的结果相同
+ */
+public class InventoryRestorerTest implements FabricGameTest {
+    private static final GameProfile PROFILE = new GameProfile(
+            UUID.nameUUIDFromBytes("simpletombstone:restorer".getBytes(StandardCharsets.UTF_8)), "restorer");
+
+    private static final int[] SLOTS = {0, 2, 8, 20, 36, 38, 39, PlayerInventory.OFF_HAND_SLOT};
+    private static final Item[] ITEMS = {Items.DIAMOND_SWORD, Items.COBBLESTONE, Items.TORCH, Items.COBBLESTONE,
+            Items.IRON_BOOTS, Items.IRON_CHESTPLATE, Items.IRON_HELMET, Items.SHIELD};
+    private static final int[] COUNTS = {1, 20, 16, 30, 1, 1, 1, 1};
+
+    @GameTest(templateName = EMPTY_STRUCTURE)
+    public void restoresOriginalSlots(TestContext context) {
+        if (TombstoneConfig.get().deferredPlacement()) {
+            SimpleTombstone.LOGGER.warn("[SimpleTombstone] 已开启延迟放置，跳过物品归还测试");
+            context.complete();
+            return;
+        }
+        ServerWorld world = context.getWorld();
+        context.setBlockState(BlockPos.ORIGIN, Blocks.STONE);
+        BlockPos deathPos = context.getAbsolutePos(BlockPos.ORIGIN.up());
+
+        FakePlayer player = FakePlayer.get(world, PROFILE);
+        player.setPosition(deathPos.getX() + 0.5, deathPos.getY(), deathPos.getZ() + 0.5);
+        PlayerInventory inventory = player.getInventory();
+        inventory.clear();
+        for (int i = 0; i < SLOTS.length; i++) {
+            inventory.setStack(SLOTS[i], new ItemStack(ITEMS[i], COUNTS[i]));
+        }
+
+        SimpleTombstone.createTombstoneForMixin(player);
+        if (!inventory.isEmpty()) {
+            context.throwGameTestException("创建墓碑后背包应为空");
+        }
+
+        TombstoneStorage storage = TombstoneStorage.load(world);
+        BlockPos tombstonePos = storage.queryByPlayer(PROFILE.getId())
+                .map(TombstoneStorage.TombstoneEntry::pos)
+                .filter(pos -> pos.equals(deathPos))
+                .findFirst()
+                .orElse(null);
+        if (tombstonePos == null) {
+            context.throwGameTestException("墓碑应在 " + deathPos.toShortString());
+            return;
+        }
+
+        for (SimpleTombstone.PlayerTombstoneData data : storage.getTombstones(tombstonePos)) {
+            if (!data.playerId().equals(PROFILE.getId())) continue;
+            // 模拟重启后从存档读取的墓碑，编码再解码后物品和槽位应保持不变
+            SimpleTombstone.PlayerTombstoneData reloaded = SimpleTombstone.PlayerTombstoneData.fromNbt(
+                    data.playerId(), data.writeItems(), data.slots(), data.createdTick());
+            if (!Arrays.equals(reloaded.slots(), data.slots()) || reloaded.items().size() != data.items().size()) {
+                context.throwGameTestException("墓碑数据经过 NBT 编码后槽位或物品数量发生变化");
+            }
+            for (int i = 0; i < data.items().size(); i++) {
+                if (!ItemStack.areEqual(reloaded.items().get(i), data.items().get(i))) {
+                    context.throwGameTestException("墓碑数据经过 NBT 编码后物品发生变化：" + data.items().get(i));
+                }
+            }
+        }
+
+        // 与玩家右键墓碑相同的领取流程，同时清除墓碑和待领取状态，不影响同一服务器中的其他测试
+        BlockHitResult hit = new BlockHitResult(Vec3d.ofCenter(tombstonePos), Direction.UP, tombstonePos, false);
+        UseBlockCallback.EVENT.invoker().interact(player, world, Hand.MAIN_HAND, hit);
+        if (storage.getTombstoneCount(PROFILE.getId()) != 0) {
+            context.throwGameTestException("右键墓碑后墓碑仍然存在");
+        }
+
+        for (int i = 0; i < SLOTS.length; i++) {
+            ItemStack stack = inventory.getStack(SLOTS[i]);
+            if (!stack.isOf(ITEMS[i]) || stack.getCount() != COUNTS[i]) {
+                context.throwGameTestException(String.format("槽位 %d 应为 %d 个 %s，实际为 %s", SLOTS[i], COUNTS[i], ITEMS[i], stack));
+            }
+        }
+        inventory.clear();
+        context.complete();
+    }
+}
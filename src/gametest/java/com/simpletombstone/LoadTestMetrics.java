@@ -0,0 +1,149 @@
+package com.simpletombstone;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.loader.api.FabricLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 负载测试的每 tick 指标和基线比较
+ * 场景进行期间记录每个服务器 tick 的耗时和服务器线程分配的字节数，场景结束时输出报告并与基线比较。
+ * tick 耗时取决于运行的机器，因此不设绝对上限，只与同一台机器上一次的报告比较。
+ * 通过系统属性设置（Gradle 中使用 -Ploadtest.xxx 传入）：
+ * <ul>
+ *     <li>simpletombstone.loadtest.baseline：上一次报告所在的目录，设置后与其中同名场景的 p95 比较</li>
+ *     <li>simpletombstone.loadtest.maxRegression：相对基线允许的 p95 增幅，默认 0.25</li>
+ * </ul>
+ */
+public final class LoadTestMetrics implements ModInitializer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadTestMetrics.class);
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final double MAX_REGRESSION = Double.parseDouble(System.getProperty("simpletombstone.loadtest.maxRegression", "0.25"));
+    private static final String BASELINE = System.getProperty("simpletombstone.loadtest.baseline");
+
+    /**
+     * 一个场景的报告，同时作为报告文件的 JSON 格式
+     */
+    public record Report(String scenario, int players, int ticks, double p50Millis, double p95Millis, double p99Millis,
+                         double maxMillis, long allocatedBytesPerTick, int recovered, int expectedRecovered,
+                         List<String> failures) {
+    }
+
+    // 以下字段只在服务器线程中访问
+    private static String scenario;
+    private static final LongArrayList TICK_NANOS = new LongArrayList();
+    private static final LongArrayList TICK_ALLOCATIONS = new LongArrayList();
+    private static long tickStart;
+    private static long allocationStart;
+
+    @Override
+    public void onInitialize() {
+        ServerTickEvents.START_SERVER_TICK.register(server -> {
+            if (scenario == null) return;
+            tickStart = System.nanoTime();
+            allocationStart = THREADS.getCurrentThreadAllocatedBytes();
+        });
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            if (scenario == null || tickStart == 0) return;
+            TICK_NANOS.add(System.nanoTime() - tickStart);
+            TICK_ALLOCATIONS.add(THREADS.getCurrentThreadAllocatedBytes() - allocationStart);
+        });
+    }
+
+    /**
+     * 开始记录一个场景，从下一个 tick 开始计入
+     */
+    static void begin(String name) {
+        scenario = name;
+        TICK_NANOS.clear();
+        TICK_ALLOCATIONS.clear();
+        tickStart = 0;
+    }
+
+    /**
+     * 结束记录，写出报告并与基线比较，超出允许增幅的情况追加到 failures 中
+     */
+    static Report finish(int players, int recovered, int expectedRecovered, List<String> failures) {
+        String name = scenario;
+        scenario = null;
+
+        long[] sorted = TICK_NANOS.toLongArray();
+        Arrays.sort(sorted);
+        long allocated = 0;
+        for (int i = 0; i < TICK_ALLOCATIONS.size(); i++) {
+            allocated += TICK_ALLOCATIONS.getLong(i);
+        }
+        // 报告持有同一个列表，之后追加的基线比较结果也会写入报告
+        List<String> allFailures = new ArrayList<>(failures);
+        Report report = new Report(name, players, sorted.length,
+                percentileMillis(sorted, 0.5), percentileMillis(sorted, 0.95), percentileMillis(sorted, 0.99),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6,
+                sorted.length == 0 ? 0 : allocated / sorted.length,
+                recovered, expectedRecovered, allFailures);
+
+        Report baseline = readBaseline(name);
+        if (baseline != null && baseline.p95Millis() > 0
+                && report.p95Millis() > baseline.p95Millis() * (1 + MAX_REGRESSION)) {
+            allFailures.add(String.format("tick 耗时 p95 %.2f ms 比基线 %.2f ms 增加超过 %.0f%%",
+                    report.p95Millis(), baseline.p95Millis(), MAX_REGRESSION * 100));
+        }
+
+        write(report);
+        LOGGER.info("[SimpleTombstone] 负载测试 {}: {} 名玩家，{} tick，MSPT p50 {} / p95 {} / p99 {} / 最大 {} ms，每 tick 分配 {} 字节，领取 {}/{}",
+                name, players, report.ticks(),
+                String.format("%.2f", report.p50Millis()), String.format("%.2f", report.p95Millis()),
+                String.format("%.2f", report.p99Millis()), String.format("%.2f", report.maxMillis()),
+                report.allocatedBytesPerTick(), recovered, expectedRecovered);
+        return report;
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(sorted.length * percentile) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private static Path reportDir() {
+        return FabricLoader.getInstance().getGameDir().resolve("loadtest");
+    }
+
+    private static void write(Report report) {
+        try {
+            Files.createDirectories(reportDir());
+            try (Writer writer = Files.newBufferedWriter(reportDir().resolve(report.scenario() + ".json"))) {
+                GSON.toJson(report, writer);
+            }
+        } catch (IOException e) {
+            LOGGER.error("写入负载测试报告时发生错误", e);
+        }
+    }
+
+    private static Report readBaseline(String name) {
+        if (BASELINE == null) return null;
+        Path file = Path.of(BASELINE).resolve(name + ".json");
+        if (!Files.exists(file)) return null;
+        try (Reader reader = Files.newBufferedReader(file)) {
+            return GSON.fromJson(reader, Report.class);
+        } catch (Exception e) {
+            LOGGER.warn("读取负载测试基线 {} 时发生错误", file, e);
+            return null;
+        }
+    }
+}
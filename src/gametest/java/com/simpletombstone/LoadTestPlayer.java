@@ -0,0 +1,38 @@
+package com.simpletombstone;
+
+import com.mojang.authlib.GameProfile;
+import com.simpletombstone.loadtest.mixin.ServerPlayerEntityAccessor;
+import net.fabricmc.fabric.api.entity.FakePlayer;
+import net.minecraft.entity.damage.DamageSource;
+import net.minecraft.server.world.ServerWorld;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 负载测试使用的假玩家
+ * {@link FakePlayer} 对所有伤害无敌，受到致命伤害时不会经过 ALLOW_DEATH 事件；
+ * 这里取消无敌，使 {@link #damage} 与真实玩家一样触发死亡事件并创建墓碑
+ */
+public class LoadTestPlayer extends FakePlayer {
+    private record Key(ServerWorld world, UUID playerId) {
+    }
+
+    // 与 FakePlayer.get 一样，每个维度中每个玩家只有一个实例；只在服务器线程中访问
+    private static final Map<Key, LoadTestPlayer> PLAYERS = new HashMap<>();
+
+    protected LoadTestPlayer(ServerWorld world, GameProfile profile) {
+        super(world, profile);
+        ((ServerPlayerEntityAccessor) this).simpletombstone$setJoinInvulnerabilityTicks(0);
+    }
+
+    public static LoadTestPlayer get(ServerWorld world, GameProfile profile) {
+        return PLAYERS.computeIfAbsent(new Key(world, profile.getId()), key -> new LoadTestPlayer(world, profile));
+    }
+
+    @Override
+    public boolean isInvulnerableTo(DamageSource damageSource) {
+        return false;
+    }
+}
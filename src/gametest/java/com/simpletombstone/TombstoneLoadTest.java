@@ -0,0 +1,298 @@
+package com.simpletombstone;
+
+import com.mojang.authlib.GameProfile;
+import com.simpletombstone.loadtest.mixin.PlayerManagerAccessor;
+import net.fabricmc.fabric.api.entity.event.v1.ServerPlayerEvents;
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.block.Blocks;
+import net.minecraft.entity.damage.DamageSource;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 无头负载测试：大量假玩家分批死亡、重生，再沿路径靠近或远离自己的墓碑
+ * 每个场景使用单独的 batch 依次执行，tick 耗时不会与其他场景重叠。运行方式：./gradlew runGametest
+ * 假玩家使用 {@link LoadTestPlayer}，死亡和重生都经过与真实玩家相同的 ALLOW_DEATH 和 AFTER_RESPAWN 事件
+ * <p>
+ * 时间线（相对测试开始的 tick）：
+ * <ol>
+ *     <li>1：创建玩家并开始记录指标</li>
+ *     <li>2 起每 2 tick 一批：死亡，检查墓碑是否创建</li>
+ *     <li>{@link #RESPAWN_TICK}：重生，一半玩家（near）沿直线走向墓碑，另一半（far）在半径外绕圈或留在其他维度</li>
+ *     <li>{@link #FIRST_CHECK_TICK}：near 玩家应已领取且物品回到原槽位，far 玩家的墓碑应保留</li>
+ *     <li>之后 far 玩家走向墓碑，{@link #FINAL_CHECK_TICK} 时所有玩家都应已领取</li>
+ * </ol>
+ */
+public class TombstoneLoadTest implements FabricGameTest {
+    private static final int PLAYERS = Integer.getInteger("simpletombstone.loadtest.players", 64);
+    private static final int BURSTS = 4;
+    private static final int RESPAWN_TICK = 20;
+    private static final int WALK_TICKS = 30;
+    private static final int FIRST_CHECK_TICK = RESPAWN_TICK + WALK_TICKS + 20;
+    private static final int FINAL_CHECK_TICK = FIRST_CHECK_TICK + WALK_TICKS + 20;
+    // far 玩家绕墓碑行走的半径，远大于靠近检测半径
+    private static final int FAR_RADIUS = 32;
+    // 足以穿透铁胸甲致死，又不会让盔甲耐久耗尽而损坏
+    private static final float LETHAL_DAMAGE = 100;
+
+    /**
+     * 死亡方式，主世界场景中轮流使用
+     */
+    private enum Cause {
+        VOID, LAVA, WATER
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "simpletombstone_overworld", tickLimit = FINAL_CHECK_TICK + 20)
+    public void overworldMassDeath(TestContext context) {
+        new Scenario(context, "overworld_mass_death", World.OVERWORLD).run();
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE, batchId = "simpletombstone_end", tickLimit = FINAL_CHECK_TICK + 20)
+    public void endVoidDeath(TestContext context) {
+        if (context.getWorld().getServer().getWorld(World.END) == null) {
+            SimpleTombstone.LOGGER.warn("[SimpleTombstone] 测试服务器没有末地维度，跳过末地负载测试");
+            context.complete();
+            return;
+        }
+        new Scenario(context, "end_void_death", World.END).run();
+    }
+
+    private static final class Scenario {
+        private final TestContext context;
+        private final String name;
+        private final MinecraftServer server;
+        private final ServerWorld deathWorld;
+        private final ServerWorld overworld;
+        private final Map<UUID, ServerPlayerEntity> playerMap;
+        private final BlockPos origin;
+        private final GameProfile[] profiles = new GameProfile[PLAYERS];
+        private final BlockPos[] deathPositions = new BlockPos[PLAYERS];
+        private final BlockPos[] tombstones = new BlockPos[PLAYERS];
+        private final BlockPos[] respawnPositions = new BlockPos[PLAYERS];
+        private final List<String> failures = new ArrayList<>();
+        private int recovered;
+
+        Scenario(TestContext context, String name, RegistryKey<World> deathDimension) {
+            this.context = context;
+            this.name = name;
+            this.server = context.getWorld().getServer();
+            this.deathWorld = server.getWorld(deathDimension);
+            this.overworld = server.getOverworld();
+            this.playerMap = ((PlayerManagerAccessor) server.getPlayerManager()).simpletombstone$getPlayerMap();
+            // 末地中远离主岛，保证死亡位置下方是虚空
+            this.origin = deathDimension == World.END
+                    ? new BlockPos(4000, 64, 4000)
+                    : context.getAbsolutePos(BlockPos.ORIGIN).add(0, 1, 0);
+        }
+
+        void run() {
+            context.runAtTick(1, () -> {
+                LoadTestMetrics.begin(name);
+                for (int i = 0; i < PLAYERS; i++) {
+                    UUID id = UUID.nameUUIDFromBytes((name + "-" + i).getBytes(StandardCharsets.UTF_8));
+                    profiles[i] = new GameProfile(id, "lt" + i);
+                    deathPositions[i] = origin.add((i % 16) * 6, 0, (i / 16) * 6);
+                }
+            });
+            int perBurst = (PLAYERS + BURSTS - 1) / BURSTS;
+            for (int burst = 0; burst < BURSTS; burst++) {
+                int from = burst * perBurst;
+                int to = Math.min(PLAYERS, from + perBurst);
+                context.runAtTick(2 + burst * 2L, () -> killBurst(from, to));
+            }
+            context.runAtTick(RESPAWN_TICK, this::respawnAll);
+            for (int t = 1; t <= WALK_TICKS; t++) {
+                int step = t;
+                context.runAtTick(RESPAWN_TICK + step, () -> walk(step, true));
+                context.runAtTick(FIRST_CHECK_TICK + step, () -> walk(step, false));
+            }
+            context.runAtTick(FIRST_CHECK_TICK, () -> check(true));
+            context.runAtTick(FINAL_CHECK_TICK, () -> {
+                check(false);
+                finish();
+            });
+        }
+
+        private boolean isNear(int i) {
+            return i % 2 == 0;
+        }
+
+        private ServerPlayerEntity player(ServerWorld world, int i) {
+            ServerPlayerEntity player = LoadTestPlayer.get(world, profiles[i]);
+            // 同一时间只在玩家所在的维度登记，和真实玩家切换维度后一致
+            playerMap.put(profiles[i].getId(), player);
+            return player;
+        }
+
+        private void killBurst(int from, int to) {
+            for (int i = from; i < to; i++) {
+                ServerPlayerEntity player = player(deathWorld, i);
+                player.setHealth(player.getMaxHealth());
+                giveLoadout(player.getInventory());
+
+                BlockPos pos = deathPositions[i];
+                DamageSource source;
+                Cause cause = deathWorld.getRegistryKey() == World.END ? Cause.VOID : Cause.values()[i % Cause.values().length];
+                switch (cause) {
+                    case LAVA -> {
+                        deathWorld.setBlockState(pos, Blocks.LAVA.getDefaultState());
+                        source = deathWorld.getDamageSources().lava();
+                    }
+                    case WATER -> {
+                        deathWorld.setBlockState(pos, Blocks.WATER.getDefaultState());
+                        source = deathWorld.getDamageSources().drown();
+                    }
+                    default -> {
+                        pos = new BlockPos(pos.getX(), deathWorld.getBottomY() - 5, pos.getZ());
+                        source = deathWorld.getDamageSources().outOfWorld();
+                    }
+                }
+                player.refreshPositionAndAngles(pos.getX() + 0.5, pos.getY(), pos.getZ() + 0.5, 0, 0);
+                player.damage(source, LETHAL_DAMAGE);
+
+                TombstoneStorage storage = TombstoneStorage.load(deathWorld);
+                tombstones[i] = storage.queryByPlayer(profiles[i].getId())
+                        .map(TombstoneStorage.TombstoneEntry::pos).findFirst().orElse(null);
+                if (tombstones[i] == null) {
+                    failures.add(String.format("玩家 %d（%s）死亡后没有创建墓碑", i, cause));
+                } else if (!player.getInventory().isEmpty()) {
+                    failures.add(String.format("玩家 %d 死亡后背包中仍有物品", i));
+                }
+            }
+        }
+
+        /**
+         * 重生在死亡位置附近 2 倍 far 半径处；末地场景中 far 玩家在主世界重生
+         */
+        private void respawnAll() {
+            for (int i = 0; i < PLAYERS; i++) {
+                if (tombstones[i] == null) continue;
+                ServerWorld world = isNear(i) ? deathWorld : overworld;
+                ServerPlayerEntity player = player(world, i);
+                player.setHealth(player.getMaxHealth());
+                respawnPositions[i] = tombstones[i].add(FAR_RADIUS * 2, 0, 0);
+                move(player, respawnPositions[i]);
+                ServerPlayerEvents.AFTER_RESPAWN.invoker().afterRespawn(player, player, false);
+            }
+            clearFluids();
+        }
+
+        /**
+         * 第一阶段 near 玩家走向墓碑、far 玩家绕圈；第二阶段 far 玩家回到墓碑所在维度并走向墓碑
+         */
+        private void walk(int step, boolean firstPhase) {
+            double progress = (double) step / WALK_TICKS;
+            for (int i = 0; i < PLAYERS; i++) {
+                if (tombstones[i] == null) continue;
+                BlockPos target = tombstones[i].add(1, 0, 0);
+                if (firstPhase && !isNear(i)) {
+                    double angle = progress * Math.PI * 2;
+                    BlockPos around = tombstones[i].add((int) (Math.cos(angle) * FAR_RADIUS), 0, (int) (Math.sin(angle) * FAR_RADIUS));
+                    move(player(overworld, i), around);
+                } else if (firstPhase == isNear(i)) {
+                    BlockPos start = respawnPositions[i];
+                    BlockPos pos = new BlockPos(
+                            (int) Math.round(start.getX() + (target.getX() - start.getX()) * progress),
+                            target.getY(),
+                            (int) Math.round(start.getZ() + (target.getZ() - start.getZ()) * progress));
+                    move(player(deathWorld, i), pos);
+                }
+            }
+        }
+
+        private void move(ServerPlayerEntity player, BlockPos pos) {
+            player.refreshPositionAndAngles(pos.getX() + 0.5, pos.getY(), pos.getZ() + 0.5, 0, 0);
+        }
+
+        private void check(boolean firstPhase) {
+            TombstoneStorage storage = TombstoneStorage.load(deathWorld);
+            for (int i = 0; i < PLAYERS; i++) {
+                if (tombstones[i] == null) continue;
+                UUID id = profiles[i].getId();
+                boolean shouldRecover = !firstPhase || isNear(i);
+                boolean checkedBefore = !firstPhase && isNear(i);
+                if (checkedBefore) continue;
+
+                int remaining = storage.getTombstoneCount(id);
+                if (!shouldRecover) {
+                    if (remaining != 1) failures.add(String.format("玩家 %d 未靠近墓碑，墓碑却被领取", i));
+                    continue;
+                }
+                if (remaining != 0) {
+                    failures.add(String.format("玩家 %d 靠近墓碑后没有领取", i));
+                    continue;
+                }
+                String mismatch = verifyLoadout(LoadTestPlayer.get(deathWorld, profiles[i]).getInventory());
+                if (mismatch != null) {
+                    failures.add(String.format("玩家 %d 领取的物品不正确：%s", i, mismatch));
+                } else {
+                    recovered++;
+                }
+            }
+        }
+
+        private void finish() {
+            int expected = 0;
+            for (BlockPos tombstone : tombstones) {
+                if (tombstone != null) expected++;
+            }
+            for (GameProfile profile : profiles) {
+                playerMap.remove(profile.getId());
+            }
+            LoadTestMetrics.Report report = LoadTestMetrics.finish(PLAYERS, recovered, expected, failures);
+            if (!report.failures().isEmpty()) {
+                context.throwGameTestException(name + ": " + String.join("; ", report.failures()));
+            }
+            context.complete();
+        }
+
+        private void clearFluids() {
+            for (BlockPos pos : deathPositions) {
+                if (!deathWorld.getFluidState(pos).isEmpty()) {
+                    deathWorld.setBlockState(pos, Blocks.AIR.getDefaultState());
+                }
+            }
+        }
+    }
+
+    // 每名玩家死亡时携带的物品及其槽位：快捷栏、主背包、盔甲栏和副手
+    private static final int[] LOADOUT_SLOTS = {0, 1, 9, 38, PlayerInventory.OFF_HAND_SLOT};
+    private static final Item[] LOADOUT_ITEMS = {Items.DIAMOND_SWORD, Items.COBBLESTONE, Items.BREAD, Items.IRON_CHESTPLATE, Items.SHIELD};
+    private static final int[] LOADOUT_COUNTS = {1, 64, 17, 1, 1};
+
+    private static void giveLoadout(PlayerInventory inventory) {
+        inventory.clear();
+        for (int i = 0; i < LOADOUT_SLOTS.length; i++) {
+            inventory.setStack(LOADOUT_SLOTS[i], new ItemStack(LOADOUT_ITEMS[i], LOADOUT_COUNTS[i]));
+        }
+    }
+
+    /**
+     * @return 不一致的描述，物品全部回到原槽位时返回 null
+     */
+    private static String verifyLoadout(PlayerInventory inventory) {
+        for (int i = 0; i < LOADOUT_SLOTS.length; i++) {
+            ItemStack stack = inventory.getStack(LOADOUT_SLOTS[i]);
+            if (!stack.isOf(LOADOUT_ITEMS[i]) || stack.getCount() != LOADOUT_COUNTS[i]) {
+                return String.format("槽位 %d 应为 %d 个 %s，实际为 %s", LOADOUT_SLOTS[i], LOADOUT_COUNTS[i], LOADOUT_ITEMS[i], stack);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,124 @@
+package com.simpletombstone;
+
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.block.Block;
+import net.minecraft.block.Blocks;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+/**
+ * 墓碑放置位置的 GameTest：在测试区域的一列方块中搭出各种死亡场景，检查 {@link TombstonePlacement#solve} 的结果
+ * 只计算位置，不放置花盆；放置的液体在同一个 tick 内清除，来不及流动
+ */
+public class TombstonePlacementTest implements FabricGameTest {
+    // 测试区域中使用的一列方块（相对坐标）
+    private static final int COLUMN_X = 1;
+    private static final int COLUMN_Z = 1;
+    // 末地虚空测试使用的一列，位于主岛和外围岛屿之间的虚空中
+    private static final int END_COLUMN = 600;
+
+    @GameTest(templateName = EMPTY_STRUCTURE)
+    public void caveDeath(TestContext context) {
+        // 地面 y=0，洞顶 y=5，在 y=3 的空中死亡：落到地面上，地面是实心方块，不需要玻璃
+        fill(context, 0, 0, Blocks.STONE);
+        fill(context, 5, 5, Blocks.STONE);
+        expect(context, "洞穴", solve(context, 3), context.getAbsolutePos(column(1)), false);
+        context.complete();
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE)
+    public void waterDeath(TestContext context) {
+        // y=1 到 y=3 是水：浮到水面上，下方是水，需要玻璃
+        fill(context, 0, 0, Blocks.STONE);
+        fill(context, 1, 3, Blocks.WATER);
+        TombstonePlacement.Result result = solve(context, 1);
+        fill(context, 1, 3, Blocks.AIR);
+        expect(context, "水中", result, context.getAbsolutePos(column(4)), true);
+        context.complete();
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE)
+    public void lavaDeath(TestContext context) {
+        // y=1 到 y=2 是岩浆：浮到岩浆上方，下方是岩浆，需要玻璃
+        fill(context, 0, 0, Blocks.STONE);
+        fill(context, 1, 2, Blocks.LAVA);
+        TombstonePlacement.Result result = solve(context, 1);
+        fill(context, 1, 2, Blocks.AIR);
+        expect(context, "岩浆中", result, context.getAbsolutePos(column(3)), true);
+        context.complete();
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE)
+    public void overworldVoidDeath(TestContext context) {
+        // 掉出世界底部：放在世界底部之上一格，底部是基岩，不需要玻璃
+        ServerWorld world = context.getWorld();
+        BlockPos top = context.getAbsolutePos(column(0));
+        int bottom = world.getBottomY();
+        world.setBlockState(new BlockPos(top.getX(), bottom, top.getZ()), Blocks.BEDROCK.getDefaultState());
+        TombstonePlacement.Result result = TombstonePlacement.solve(world, new BlockPos(top.getX(), bottom - 5, top.getZ()));
+        expect(context, "主世界虚空", result, new BlockPos(top.getX(), bottom + 1, top.getZ()), false);
+        context.complete();
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE)
+    public void endVoidDeath(TestContext context) {
+        ServerWorld end = context.getWorld().getServer().getWorld(World.END);
+        if (end == null) {
+            SimpleTombstone.LOGGER.warn("[SimpleTombstone] 测试服务器没有末地维度，跳过末地虚空放置测试");
+            context.complete();
+            return;
+        }
+        int bottom = end.getBottomY();
+        BlockPos deathPos = new BlockPos(END_COLUMN, bottom - 5, END_COLUMN);
+
+        // 该列没有地面：悬浮在固定高度，下方是虚空，需要玻璃
+        expect(context, "末地虚空", TombstonePlacement.solve(end, deathPos),
+                new BlockPos(END_COLUMN, bottom + TombstonePlacement.END_VOID_HEIGHT, END_COLUMN), true);
+
+        // 该列有地面：落在地面上，不需要玻璃
+        BlockPos ground = new BlockPos(END_COLUMN, bottom + 40, END_COLUMN);
+        end.setBlockState(ground, Blocks.END_STONE.getDefaultState());
+        TombstonePlacement.Result result = TombstonePlacement.solve(end, deathPos);
+        end.setBlockState(ground, Blocks.AIR.getDefaultState());
+        expect(context, "末地虚空（有地面）", result, ground.up(), false);
+        context.complete();
+    }
+
+    @GameTest(templateName = EMPTY_STRUCTURE)
+    public void fallbackKeepsSolidBase(TestContext context) {
+        // 水柱高于检查次数上限：退回死亡位置，下方是实心方块，不能用玻璃覆盖
+        int height = TombstonePlacement.MAX_PROBES + 4;
+        fill(context, 0, 0, Blocks.STONE);
+        fill(context, 1, height, Blocks.WATER);
+        TombstonePlacement.Result result = solve(context, 1);
+        fill(context, 1, height, Blocks.AIR);
+        expect(context, "检查次数用尽", result, context.getAbsolutePos(column(1)), false);
+        context.complete();
+    }
+
+    private static BlockPos column(int y) {
+        return new BlockPos(COLUMN_X, y, COLUMN_Z);
+    }
+
+    private static void fill(TestContext context, int fromY, int toY, Block block) {
+        for (int y = fromY; y <= toY; y++) {
+            context.setBlockState(column(y), block);
+        }
+    }
+
+    private static TombstonePlacement.Result solve(TestContext context, int deathY) {
+        return TombstonePlacement.solve(context.getWorld(), context.getAbsolutePos(column(deathY)));
+    }
+
+    private static void expect(TestContext context, String name, TombstonePlacement.Result result,
+                               BlockPos tombstonePos, boolean needsGlassBase) {
+        if (!result.tombstonePos().equals(tombstonePos) || result.needsGlassBase() != needsGlassBase) {
+            context.throwGameTestException(String.format("%s：墓碑应在 %s（玻璃 %s），实际在 %s（玻璃 %s）",
+                    name, tombstonePos.toShortString(), needsGlassBase,
+                    result.tombstonePos().toShortString(), result.needsGlassBase()));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.simpletombstone.loadtest.mixin;
+
+import net.minecraft.server.PlayerManager;
+import net.minecraft.server.network.ServerPlayerEntity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 负载测试中的假玩家没有网络连接，不会经过正常的登录流程，
+ * 直接登记到 UUID 查找表中，使 {@link PlayerManager#getPlayer(UUID)} 能找到它们
+ */
+@Mixin(PlayerManager.class)
+public interface PlayerManagerAccessor {
+    @Accessor("playerMap")
+    Map<UUID, ServerPlayerEntity> simpletombstone$getPlayerMap();
+}
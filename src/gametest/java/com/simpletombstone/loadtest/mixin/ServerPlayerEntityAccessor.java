@@ -0,0 +1,15 @@
+package com.simpletombstone.loadtest.mixin;
+
+import net.minecraft.server.network.ServerPlayerEntity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+/**
+ * 负载测试中的假玩家不会被世界 tick，进入服务器时的无敌时间不会减少，
+ * 需要直接清零，否则岩浆、溺水等伤害不会生效
+ */
+@Mixin(ServerPlayerEntity.class)
+public interface ServerPlayerEntityAccessor {
+    @Accessor("joinInvulnerabilityTicks")
+    void simpletombstone$setJoinInvulnerabilityTicks(int ticks);
+}
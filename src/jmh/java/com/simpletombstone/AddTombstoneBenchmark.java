@@ -0,0 +1,78 @@
+package com.simpletombstone;
+
+import net.minecraft.datafixer.Schemas;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.PersistentStateManager;
+import net.minecraft.world.World;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 添加墓碑的开销，包括分片查找、同位置合并和玩家墓碑上限淘汰
+ * 存储使用临时目录中的 PersistentStateManager，不开启日志，避免测到磁盘
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddTombstoneBenchmark {
+    private static final int POSITIONS = 1 << 16;
+
+    @Param({"0", "5"})
+    public int maxTombstonesPerPlayer;
+
+    private Path tempDir;
+    private TombstoneStorage storage;
+    private List<UUID> playerIds;
+    private BlockPos[] positions;
+    private List<ItemStack> items;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        BenchmarkSupport.bootstrap();
+        tempDir = Files.createTempDirectory("simpletombstone-jmh");
+        Random random = new Random(42);
+        playerIds = BenchmarkSupport.players(20, random);
+        positions = new BlockPos[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++) {
+            positions[i] = BenchmarkSupport.randomPos(random);
+        }
+        items = BenchmarkSupport.inventory(random);
+    }
+
+    /**
+     * 每轮迭代使用新的存储，位置用完时也会换新，避免同一位置反复合并导致物品列表无限增长
+     */
+    @Setup(Level.Iteration)
+    public void resetStorage() {
+        PersistentStateManager stateManager = new PersistentStateManager(tempDir.toFile(), Schemas.getFixer());
+        storage = new TombstoneStorage(stateManager, World.OVERWORLD, BenchmarkSupport.config(maxTombstonesPerPlayer));
+        next = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public TombstoneStorage addTombstone() {
+        if (next == POSITIONS) resetStorage();
+        int i = next++;
+        UUID playerId = playerIds.get(i % playerIds.size());
+        // 墓碑数据会接管并合并传入的物品，与真实死亡一样每次使用新取下的物品
+        storage.addTombstone(positions[i], new SimpleTombstone.PlayerTombstoneData(playerId, BenchmarkSupport.copy(items), i));
+        return storage;
+    }
+}
@@ -0,0 +1,108 @@
+package com.simpletombstone;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.block.Blocks;
+import net.minecraft.enchantment.Enchantments;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.text.Text;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 基准测试的公共工具：在没有服务器的情况下初始化注册表，并生成接近真实的玩家物品
+ */
+final class BenchmarkSupport {
+    private static boolean bootstrapped;
+
+    private BenchmarkSupport() {
+    }
+
+    static synchronized void bootstrap() {
+        if (!bootstrapped) {
+            SharedConstants.createGameVersion();
+            Bootstrap.initialize();
+            bootstrapped = true;
+        }
+    }
+
+    /**
+     * 基准测试使用的配置，不读取配置文件，关闭日志和异步保存
+     */
+    static TombstoneConfig config(int maxTombstonesPerPlayer) {
+        return TombstoneConfig.fromJson(String.format(
+                "{\"maxTombstonesPerPlayer\": %d, \"asyncSave\": false, \"journalEnabled\": false}", maxTombstonesPerPlayer));
+    }
+
+    static List<UUID> players(int count, Random random) {
+        List<UUID> players = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            players.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+        return players;
+    }
+
+    /**
+     * 在 4096x4096 的范围内随机生成墓碑位置
+     */
+    static BlockPos randomPos(Random random) {
+        return new BlockPos(random.nextInt(4096) - 2048, random.nextInt(128), random.nextInt(4096) - 2048);
+    }
+
+    static List<ItemStack> copy(List<ItemStack> items) {
+        List<ItemStack> copy = new ArrayList<>(items.size());
+        for (ItemStack stack : items) {
+            copy.add(stack.copy());
+        }
+        return copy;
+    }
+
+    /**
+     * 一份典型的死亡背包：大量普通方块，加上附魔装备、命名工具和装满物品的潜影盒
+     */
+    static List<ItemStack> inventory(Random random) {
+        List<ItemStack> items = new ArrayList<>(36);
+        for (int i = 0; i < 24; i++) {
+            items.add(new ItemStack(random.nextBoolean() ? Items.COBBLESTONE : Items.DIRT, 1 + random.nextInt(64)));
+        }
+        for (int i = 0; i < 4; i++) {
+            items.add(new ItemStack(Items.TORCH, 1 + random.nextInt(64)));
+        }
+
+        ItemStack sword = new ItemStack(Items.NETHERITE_SWORD);
+        sword.addEnchantment(Enchantments.SHARPNESS, 5);
+        sword.addEnchantment(Enchantments.LOOTING, 3);
+        sword.addEnchantment(Enchantments.UNBREAKING, 3);
+        sword.addEnchantment(Enchantments.MENDING, 1);
+        sword.setCustomName(Text.literal("Benchmark Blade"));
+        items.add(sword);
+
+        ItemStack pickaxe = new ItemStack(Items.DIAMOND_PICKAXE);
+        pickaxe.addEnchantment(Enchantments.EFFICIENCY, 5);
+        pickaxe.addEnchantment(Enchantments.FORTUNE, 3);
+        pickaxe.setDamage(random.nextInt(1000));
+        items.add(pickaxe);
+
+        for (int i = 0; i < 2; i++) {
+            ItemStack shulker = new ItemStack(Blocks.SHULKER_BOX);
+            NbtList contents = new NbtList();
+            for (int slot = 0; slot < 27; slot++) {
+                ItemStack book = new ItemStack(Items.ENCHANTED_BOOK);
+                book.addEnchantment(Enchantments.PROTECTION, 4);
+                NbtCompound entry = book.writeNbt(new NbtCompound());
+                entry.putByte("Slot", (byte) slot);
+                contents.add(entry);
+            }
+            shulker.getOrCreateSubNbt("BlockEntityTag").put("Items", contents);
+            items.add(shulker);
+        }
+        return items;
+    }
+}
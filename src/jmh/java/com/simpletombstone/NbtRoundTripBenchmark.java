@@ -0,0 +1,73 @@
+package com.simpletombstone;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.math.BlockPos;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 分片的 NBT 编码和读取开销
+ * readLazy 对应服务器加载存档时的实际开销，readAndDecode 额外解码全部物品，相当于所有墓碑都被领取
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NbtRoundTripBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int tombstones;
+
+    private Supplier<TombstoneConfig> config;
+    private TombstoneShard shard;
+    private NbtCompound encoded;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.bootstrap();
+        TombstoneConfig fixed = BenchmarkSupport.config(0);
+        config = () -> fixed;
+        Random random = new Random(42);
+        List<UUID> playerIds = BenchmarkSupport.players(80, random);
+
+        TombstoneIndex index = new TombstoneIndex();
+        shard = new TombstoneShard(index, config);
+        for (int i = 0; i < tombstones; i++) {
+            BlockPos pos = BenchmarkSupport.randomPos(random);
+            index.getOrCreate(pos).add(new SimpleTombstone.PlayerTombstoneData(
+                    playerIds.get(i % playerIds.size()), BenchmarkSupport.inventory(random), i));
+            shard.track(pos);
+        }
+        encoded = shard.writeNbt(new NbtCompound());
+    }
+
+    @Benchmark
+    public NbtCompound write() {
+        return shard.writeNbt(new NbtCompound());
+    }
+
+    @Benchmark
+    public TombstoneIndex readLazy() {
+        TombstoneIndex index = new TombstoneIndex();
+        TombstoneShard.fromNbt(encoded, index, config);
+        return index;
+    }
+
+    @Benchmark
+    public void readAndDecode(Blackhole blackhole) {
+        TombstoneIndex index = new TombstoneIndex();
+        TombstoneShard.fromNbt(encoded, index, config);
+        index.forEach((pos, list) -> {
+            for (SimpleTombstone.PlayerTombstoneData data : list) {
+                blackhole.consume(data.items());
+            }
+        });
+    }
+}
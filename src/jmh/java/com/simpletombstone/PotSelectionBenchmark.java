@@ -0,0 +1,51 @@
+package com.simpletombstone;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.FlowerPotBlock;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.entry.RegistryEntry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 选择墓碑花盆的开销：缓存的候选数组对比原先每次死亡都遍历方块注册表的实现
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PotSelectionBenchmark {
+    private TombstoneConfig config;
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.bootstrap();
+        config = BenchmarkSupport.config(0);
+        FlowerPotCandidates.rebuild(config);
+    }
+
+    @Benchmark
+    public Block cached() {
+        return FlowerPotCandidates.pick(config);
+    }
+
+    @Benchmark
+    public Block legacyRegistryStream() {
+        List<Block> pots = Registries.BLOCK.streamEntries()
+                .map(RegistryEntry::value)
+                .filter(block -> block instanceof FlowerPotBlock && block != Blocks.FLOWER_POT)
+                .filter(block -> {
+                    String id = Registries.BLOCK.getId(block).toString();
+                    boolean inList = config.flowerPots().contains(id);
+                    return config.whitelistMode() == inList;
+                })
+                .toList();
+        return pots.isEmpty() ? Blocks.POTTED_DANDELION : pots.get(ThreadLocalRandom.current().nextInt(pots.size()));
+    }
+}
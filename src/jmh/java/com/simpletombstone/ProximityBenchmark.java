@@ -0,0 +1,110 @@
+package com.simpletombstone;
+
+import net.minecraft.datafixer.Schemas;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.PersistentStateManager;
+import net.minecraft.world.World;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 近距离检测的开销：一次 tick 内对所有在线玩家各做一次检测
+ * 检测本身需要真实的 ServerPlayerEntity，这里只测其核心部分，即按玩家位置查找附近属于该玩家的墓碑。
+ * legacyScan 复现了原先逐格探测 (2r+1)^3 个 BlockPos 的实现，作为对比基线
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProximityBenchmark {
+    private static final int RADIUS = 4;
+
+    @Param({"100", "1000", "10000"})
+    public int tombstones;
+
+    @Param({"10", "80"})
+    public int players;
+
+    private Path tempDir;
+    private TombstoneStorage storage;
+    private Map<BlockPos, List<SimpleTombstone.PlayerTombstoneData>> legacy;
+    private List<UUID> playerIds;
+    private BlockPos[] playerPositions;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkSupport.bootstrap();
+        tempDir = Files.createTempDirectory("simpletombstone-jmh");
+        storage = new TombstoneStorage(new PersistentStateManager(tempDir.toFile(), Schemas.getFixer()),
+                World.OVERWORLD, BenchmarkSupport.config(0));
+        Random random = new Random(42);
+        playerIds = BenchmarkSupport.players(players, random);
+        legacy = new HashMap<>();
+
+        List<BlockPos> placed = new ArrayList<>(tombstones);
+        for (int i = 0; i < tombstones; i++) {
+            BlockPos pos = BenchmarkSupport.randomPos(random);
+            UUID owner = playerIds.get(i % players);
+            // 检测只关心归属，物品保持空列表即可
+            SimpleTombstone.PlayerTombstoneData data = new SimpleTombstone.PlayerTombstoneData(owner, new ArrayList<>(), i);
+            storage.addTombstone(pos, data);
+            legacy.computeIfAbsent(pos, k -> new ArrayList<>(1)).add(data);
+            placed.add(pos);
+        }
+
+        // 四分之一的玩家站在自己的墓碑旁边，其余玩家在随机位置
+        playerPositions = new BlockPos[players];
+        for (int i = 0; i < players; i++) {
+            playerPositions[i] = i % 4 == 0 && i < placed.size()
+                    ? placed.get(i).add(random.nextInt(3) - 1, 0, random.nextInt(3) - 1)
+                    : BenchmarkSupport.randomPos(random);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void playerEntries(Blackhole blackhole) {
+        for (int i = 0; i < players; i++) {
+            blackhole.consume(storage.findPlayerTombstones(playerIds.get(i), playerPositions[i], RADIUS));
+        }
+    }
+
+    @Benchmark
+    public void legacyScan(Blackhole blackhole) {
+        for (int i = 0; i < players; i++) {
+            BlockPos center = playerPositions[i];
+            UUID playerId = playerIds.get(i);
+            List<BlockPos> found = new ArrayList<>();
+            for (int dx = -RADIUS; dx <= RADIUS; dx++) {
+                for (int dy = -RADIUS; dy <= RADIUS; dy++) {
+                    for (int dz = -RADIUS; dz <= RADIUS; dz++) {
+                        BlockPos pos = center.add(dx, dy, dz);
+                        List<SimpleTombstone.PlayerTombstoneData> list = legacy.get(pos);
+                        if (list == null) continue;
+                        for (SimpleTombstone.PlayerTombstoneData data : list) {
+                            if (data.playerId().equals(playerId)) {
+                                found.add(pos);
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            blackhole.consume(found);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.simpletombstone;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * 墓碑过期的分层时间轮
+ * 共 {@link #LEVELS} 层，每层 64 个槽，第 n 层每个槽跨 64^n 个 tick，可直接容纳约 9.7 天内的到期时间，
+ * 更远的到期时间放在溢出列表中，最高层转完一圈时再重新放入时间轮。
+ * 每个 tick 只需检查第 0 层的一个槽，上层的槽在下层转完一圈时整体下放，均摊开销为 O(1)
+ * <p>
+ * 不支持取消：墓碑被领取或合并后，到期的计时器会在触发时由调用方校验并丢弃
+ */
+public class ExpiryWheel {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    /**
+     * 一个到期计时器
+     * @param pos 墓碑位置 long
+     * @param deadline 到期时的世界时间
+     */
+    public record Timer(long pos, UUID playerId, long deadline) {
+    }
+
+    @SuppressWarnings("unchecked")
+    private final List<Timer>[][] wheels = new List[LEVELS][SLOTS];
+    private final List<Timer> overflow = new ArrayList<>();
+    // 启动前加入的计时器，以及已经到期等待下一次推进时触发的计时器
+    private List<Timer> due = new ArrayList<>();
+    private long now = Long.MIN_VALUE;
+    private int size;
+
+    public boolean isStarted() {
+        return now != Long.MIN_VALUE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 以当前世界时间启动时间轮，启动前加入的计时器在此时放入对应的槽
+     */
+    public void start(long currentTick) {
+        if (isStarted()) return;
+        now = currentTick;
+        List<Timer> pending = due;
+        due = new ArrayList<>();
+        size -= pending.size();
+        for (Timer timer : pending) {
+            schedule(timer);
+        }
+    }
+
+    public void schedule(Timer timer) {
+        size++;
+        if (!isStarted()) {
+            due.add(timer);
+            return;
+        }
+        place(timer);
+    }
+
+    private void place(Timer timer) {
+        long delta = timer.deadline() - now;
+        if (delta <= 0) {
+            due.add(timer);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (BITS * (level + 1))) {
+                int slot = (int) (timer.deadline() >>> (BITS * level)) & MASK;
+                List<Timer> bucket = wheels[level][slot];
+                if (bucket == null) {
+                    bucket = new ArrayList<>(2);
+                    wheels[level][slot] = bucket;
+                }
+                bucket.add(timer);
+                return;
+            }
+        }
+        overflow.add(timer);
+    }
+
+    /**
+     * 推进到指定的世界时间，依次触发到期的计时器
+     */
+    public void advance(long currentTick, Consumer<Timer> expire) {
+        if (!isStarted()) {
+            start(currentTick);
+        }
+        fireDue(expire);
+        if (size == 0) {
+            // 时间轮为空时直接跳到当前时间
+            now = Math.max(now, currentTick);
+            return;
+        }
+        while (now < currentTick) {
+            now++;
+            int slot = (int) now & MASK;
+            if (slot == 0) {
+                cascade(1);
+                // 恰好在此刻到期的计时器下放时进入 due
+                fireDue(expire);
+            }
+            List<Timer> bucket = wheels[0][slot];
+            if (bucket != null) {
+                wheels[0][slot] = null;
+                size -= bucket.size();
+                for (Timer timer : bucket) {
+                    expire.accept(timer);
+                }
+            }
+        }
+    }
+
+    private void fireDue(Consumer<Timer> expire) {
+        if (due.isEmpty()) return;
+        List<Timer> fired = due;
+        due = new ArrayList<>();
+        size -= fired.size();
+        for (Timer timer : fired) {
+            expire.accept(timer);
+        }
+    }
+
+    /**
+     * 下层转完一圈时把上层当前槽中的计时器重新放入时间轮
+     */
+    private void cascade(int level) {
+        List<Timer> bucket;
+        if (level == LEVELS) {
+            if (overflow.isEmpty()) return;
+            bucket = new ArrayList<>(overflow);
+            overflow.clear();
+        } else {
+            int slot = (int) (now >>> (BITS * level)) & MASK;
+            if (slot == 0) {
+                cascade(level + 1);
+            }
+            bucket = wheels[level][slot];
+            if (bucket == null) return;
+            wheels[level][slot] = null;
+        }
+        for (Timer timer : bucket) {
+            place(timer);
+        }
+    }
+}
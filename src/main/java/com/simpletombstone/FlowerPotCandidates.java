@@ -0,0 +1,54 @@
+package com.simpletombstone;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.FlowerPotBlock;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.entry.RegistryEntry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 缓存可用作墓碑的花盆方块
+ * 候选列表在服务器启动时根据配置计算一次，之后每次死亡只需随机取一个元素
+ * 候选列表与计算时使用的配置绑定，配置重新加载后会在下一次选择时重新计算；方块注册表发生变化时需要调用 {@link #rebuild(TombstoneConfig)}
+ */
+public final class FlowerPotCandidates {
+    private record Cache(TombstoneConfig config, Block[] pots) {
+    }
+
+    private static volatile Cache cache;
+
+    private FlowerPotCandidates() {
+    }
+
+    /**
+     * 根据白名单/黑名单配置重新计算候选花盆
+     */
+    public static void rebuild(TombstoneConfig config) {
+        Block[] candidates = Registries.BLOCK.streamEntries()
+                .map(RegistryEntry::value)
+                .filter(block -> block instanceof FlowerPotBlock && block != Blocks.FLOWER_POT)
+                .filter(block -> {
+                    String id = Registries.BLOCK.getId(block).toString();
+                    boolean inList = config.flowerPots().contains(id);
+                    return config.whitelistMode() == inList;
+                })
+                .toArray(Block[]::new);
+        cache = new Cache(config, candidates);
+        SimpleTombstone.LOGGER.info("[SimpleTombstone] 已缓存 {} 种候选花盆。", candidates.length);
+    }
+
+    /**
+     * 随机选择一个候选花盆，没有候选时使用蒲公英盆栽
+     */
+    public static Block pick(TombstoneConfig config) {
+        Cache current = cache;
+        if (current == null || current.config() != config) {
+            rebuild(config);
+            current = cache;
+        }
+        Block[] pots = current.pots();
+        return pots.length == 0 ? Blocks.POTTED_DANDELION : pots[ThreadLocalRandom.current().nextInt(pots.length)];
+    }
+}
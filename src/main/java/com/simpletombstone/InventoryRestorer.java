@@ -0,0 +1,88 @@
+package com.simpletombstone;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.ItemStack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把墓碑中的物品归还到玩家背包
+ * 先把物品放回死亡时所在的槽位（快捷栏、盔甲栏、副手），其余物品在一次背包遍历中合并到已有的堆叠或空槽，
+ * 放不下的物品合并后再掉落，尽量减少掉落物实体的数量
+ */
+public final class InventoryRestorer {
+    // 主背包（含快捷栏）的槽位数，之后依次为盔甲栏和副手
+    private static final int MAIN_SIZE = PlayerInventory.MAIN_SIZE;
+
+    private InventoryRestorer() {
+    }
+
+    /**
+     * 归还物品，不会修改传入的列表和物品
+     * 墓碑数据可能正被后台保存线程编码，因此放入背包的是物品的副本
+     * @param slots 与物品一一对应的原背包槽位，为 null 时全部按空余位置放入
+     */
+    public static void restore(PlayerEntity player, List<ItemStack> items, byte[] slots) {
+        if (items.isEmpty()) return;
+        PlayerInventory inventory = player.getInventory();
+
+        // 原槽位为空时直接放回
+        List<ItemStack> rest = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            ItemStack stack = items.get(i);
+            if (stack.isEmpty()) continue;
+            int slot = slots != null ? slots[i] : TombstoneItems.NO_SLOT;
+            if (slot >= 0 && slot < inventory.size() && inventory.getStack(slot).isEmpty()) {
+                inventory.setStack(slot, stack.copy());
+            } else {
+                rest.add(stack.copy());
+            }
+        }
+        if (rest.isEmpty()) return;
+
+        // 遍历一次主背包，记录未满的堆叠和空槽
+        IntArrayList partial = new IntArrayList();
+        IntArrayList empty = new IntArrayList();
+        for (int slot = 0; slot < MAIN_SIZE; slot++) {
+            ItemStack current = inventory.getStack(slot);
+            if (current.isEmpty()) {
+                empty.add(slot);
+            } else if (current.isStackable() && current.getCount() < current.getMaxCount()) {
+                partial.add(slot);
+            }
+        }
+
+        List<ItemStack> overflow = new ArrayList<>();
+        int nextEmpty = 0;
+        for (ItemStack stack : rest) {
+            if (stack.isStackable()) {
+                for (int i = 0; i < partial.size() && !stack.isEmpty(); i++) {
+                    ItemStack target = inventory.getStack(partial.getInt(i));
+                    if (target.getCount() < target.getMaxCount() && ItemStack.canCombine(target, stack)) {
+                        int moved = Math.min(stack.getCount(), target.getMaxCount() - target.getCount());
+                        target.increment(moved);
+                        stack.decrement(moved);
+                    }
+                }
+                if (stack.isEmpty()) continue;
+            }
+            if (nextEmpty < empty.size()) {
+                int slot = empty.getInt(nextEmpty++);
+                inventory.setStack(slot, stack);
+                if (stack.isStackable() && stack.getCount() < stack.getMaxCount()) {
+                    partial.add(slot);
+                }
+            } else {
+                overflow.add(stack);
+            }
+        }
+        inventory.markDirty();
+
+        for (ItemStack stack : TombstoneItems.compact(overflow)) {
+            player.dropItem(stack, false);
+        }
+    }
+}
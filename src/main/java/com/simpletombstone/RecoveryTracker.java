@@ -0,0 +1,165 @@
+package com.simpletombstone;
+
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.world.World;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 记录每个玩家待领取墓碑的状态，驱动靠近领取检测
+ * 只有存在待领取墓碑、已重生且在线的玩家才会进入轮询队列，
+ * 并且只有当玩家移动到新的方块或切换维度时才会真正执行检测
+ * <p>
+ * 状态本身不单独保存：服务器启动时由各维度存储中的墓碑记录重建，
+ * 上次关闭时尚未重生的玩家在重新进入时处于死亡界面，轮询时会跳过死亡的玩家
+ * <p>
+ * 墓碑可能在轮询之外被领取（右键、过期），此时玩家可能仍在队列中：
+ * 待领取数量归零的状态保留到下次轮询时再移除，队列中同一玩家始终只有一项
+ */
+public class RecoveryTracker {
+    private static final class PlayerState {
+        // 尚未领取的墓碑数量
+        int pending;
+        // 死亡后到重生前不做检测
+        boolean respawned;
+        // 是否已在轮询队列中
+        boolean queued;
+        // 上次检测时所在的维度和方块位置，维度为 null 表示需要强制检测
+        RegistryKey<World> lastDimension;
+        long lastPos;
+    }
+
+    private final Map<UUID, PlayerState> states = new HashMap<>();
+    private final ArrayDeque<UUID> queue = new ArrayDeque<>();
+    private int ticksSinceCheck;
+
+    /**
+     * 玩家死亡并生成墓碑，重生前暂停该玩家的检测
+     */
+    public void onTombstoneCreated(UUID playerId) {
+        PlayerState state = states.computeIfAbsent(playerId, k -> new PlayerState());
+        state.pending++;
+        state.respawned = false;
+    }
+
+    /**
+     * 从存档中读取到玩家的墓碑，玩家视为已重生，进入服务器时再加入轮询队列
+     */
+    public void onTombstonesLoaded(UUID playerId, int count) {
+        PlayerState state = states.computeIfAbsent(playerId, k -> {
+            PlayerState created = new PlayerState();
+            created.respawned = true;
+            return created;
+        });
+        state.pending += count;
+    }
+
+    /**
+     * 玩家进入服务器，若有待领取墓碑则加入轮询队列
+     */
+    public void onJoin(UUID playerId) {
+        PlayerState state = states.get(playerId);
+        if (state == null || state.pending <= 0 || !state.respawned) return;
+        state.lastDimension = null;
+        if (!state.queued) {
+            state.queued = true;
+            queue.add(playerId);
+        }
+    }
+
+    /**
+     * 清空所有状态，服务器启动时调用，之后由存档重建
+     */
+    public void clear() {
+        states.clear();
+        queue.clear();
+        ticksSinceCheck = 0;
+    }
+
+    /**
+     * 玩家重生，若有待领取墓碑则加入轮询队列
+     * @return 玩家是否有待领取的墓碑
+     */
+    public boolean onRespawn(UUID playerId) {
+        PlayerState state = states.get(playerId);
+        if (state == null || state.pending <= 0) return false;
+        state.respawned = true;
+        state.lastDimension = null;
+        if (!state.queued) {
+            state.queued = true;
+            queue.add(playerId);
+        }
+        return true;
+    }
+
+    /**
+     * 玩家领取了一个墓碑，全部领取后不再跟踪该玩家
+     * 玩家仍在轮询队列中时保留状态，由下次轮询移除，避免之后重新加入时队列中出现重复的玩家
+     */
+    public void onRecovered(UUID playerId) {
+        PlayerState state = states.get(playerId);
+        if (state == null) return;
+        if (state.pending > 0) state.pending--;
+        if (state.pending == 0 && !state.queued) {
+            states.remove(playerId);
+        }
+    }
+
+    public boolean isTracking(UUID playerId) {
+        PlayerState state = states.get(playerId);
+        return state != null && state.pending > 0;
+    }
+
+    /**
+     * 每隔 interval 个 tick 轮询一次队列，每次最多对 budget 个位置发生变化的玩家执行检测
+     * 因预算不足未轮询到的玩家留在队首，下次优先处理；离线的玩家移出队列，重新进入服务器时再加入
+     */
+    public void tick(MinecraftServer server, int interval, int budget, Consumer<ServerPlayerEntity> evaluator) {
+        if (queue.isEmpty() || ++ticksSinceCheck < interval) return;
+        ticksSinceCheck = 0;
+
+        int polls = queue.size();
+        int evaluations = 0;
+        while (polls-- > 0 && evaluations < budget) {
+            UUID playerId = queue.poll();
+            PlayerState state = states.get(playerId);
+            if (state == null) continue;
+            if (state.pending <= 0) {
+                // 已在轮询之外领取完毕
+                states.remove(playerId);
+                state.queued = false;
+                continue;
+            }
+            if (!state.respawned) {
+                state.queued = false;
+                continue;
+            }
+
+            ServerPlayerEntity player = server.getPlayerManager().getPlayer(playerId);
+            if (player == null) {
+                state.queued = false;
+                continue;
+            }
+            if (!player.isDead()) {
+                long pos = player.getBlockPos().asLong();
+                RegistryKey<World> dimension = player.getWorld().getRegistryKey();
+                if (pos != state.lastPos || dimension != state.lastDimension) {
+                    state.lastPos = pos;
+                    state.lastDimension = dimension;
+                    evaluations++;
+                    evaluator.accept(player);
+                }
+            }
+
+            if (state.pending > 0) {
+                queue.add(playerId);
+            } else {
+                states.remove(playerId);
+                state.queued = false;
+            }
+        }
+    }
+}
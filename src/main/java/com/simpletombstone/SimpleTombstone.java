@@ -1,21 +1,25 @@
 package com.simpletombstone;
 
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.fabricmc.fabric.api.event.player.UseBlockCallback;
 import net.fabricmc.fabric.api.entity.event.v1.ServerLivingEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerWorldEvents;
 import net.fabricmc.fabric.api.entity.event.v1.ServerPlayerEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 
 import net.minecraft.block.*;
-import net.minecraft.fluid.Fluids;
 import net.minecraft.item.ItemStack;
-import net.minecraft.registry.RegistryKey;
-import net.minecraft.registry.Registries;
-import net.minecraft.registry.entry.RegistryEntry;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.Text;
 import net.minecraft.util.ActionResult;
+import net.minecraft.util.Hand;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
@@ -27,74 +31,110 @@ import java.util.*;
 public class SimpleTombstone implements ModInitializer {
     public static final String MOD_ID = "simple-tombstone";
     public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
-    private static final Map<BlockPos, List<PlayerTombstoneData>> TOMBSTONE_CHESTS = new HashMap<>();
-    private static final Set<UUID> DEAD_PLAYERS = new HashSet<>();
-    private static final Set<UUID> RESURRECTED_PLAYERS = new HashSet<>();
-    private static TombstoneConfig config;
+    private static final RecoveryTracker RECOVERY_TRACKER = new RecoveryTracker();
+    private static final TombstoneQueue TOMBSTONE_QUEUE = new TombstoneQueue();
 
     @Override
     public void onInitialize() {
         LOGGER.info("[SimpleTombstone] 服务器端初始化中...");
 
-        config = TombstoneConfig.load();
+        TombstoneConfig.get();
+
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) ->
+                TombstoneCommands.register(dispatcher));
+
+        // 方块注册表在服务器启动时已冻结，此时计算一次候选花盆
+        ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+            TombstoneConfig config = TombstoneConfig.get();
+            FlowerPotCandidates.rebuild(config);
+            if (config.watchConfigFile()) {
+                TombstoneConfigWatcher.start(server);
+            }
+        });
+        // 保存世界前放置所有排队中的墓碑
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+            TombstoneConfigWatcher.stop();
+            TOMBSTONE_QUEUE.drainAll(pending -> placeTombstone(server, pending));
+        });
+        // 关闭服务器前等待后台保存和日志写完
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            TombstoneSaver.awaitPendingSaves();
+            TombstoneJournal.awaitPendingWrites();
+        });
+
+        // 维度加载时读取墓碑头文件，建立右键检测用的位置过滤器，并恢复各玩家的待领取状态
+        // 待领取状态由存档重建，先清空上一次（单人游戏中可能是另一个存档）留下的状态
+        ServerLifecycleEvents.SERVER_STARTING.register(server -> RECOVERY_TRACKER.clear());
+        ServerWorldEvents.LOAD.register((server, world) ->
+                TombstoneStorage.load(world).forEachPlayer(RECOVERY_TRACKER::onTombstonesLoaded));
+        ServerWorldEvents.UNLOAD.register((server, world) -> TombstoneStorage.unload(world));
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) ->
+                RECOVERY_TRACKER.onJoin(handler.getPlayer().getUuid()));
+        // 过期墓碑所在区块加载时移除残留的花盆
+        ServerChunkEvents.CHUNK_LOAD.register((world, chunk) ->
+                TombstoneStorage.load(world).onChunkLoad(chunk.getPos().toLong()));
+        ServerTickEvents.END_WORLD_TICK.register(world ->
+                TombstoneStorage.load(world).tickExpiry(world, (pos, playerId) -> RECOVERY_TRACKER.onRecovered(playerId)));
 
         ServerLivingEntityEvents.ALLOW_DEATH.register((entity, damageSource, damageAmount) -> {
             if (entity instanceof ServerPlayerEntity player) {
                 if (player.getClass().getName().contains("EntityPlayerMPFake")) {
-                    LOGGER.info("[SimpleTombstone] 跳过 Carpet 假人 {}", player.getName().getString());
+                    LOGGER.debug("[SimpleTombstone] 跳过 Carpet 假人 {}", player.getUuid());
                     return true;
                 }
-                LOGGER.info("[SimpleTombstone] 检测到玩家 {} 死亡，创建墓碑...", player.getName().getString());
-                RESURRECTED_PLAYERS.remove(player.getUuid());
+                LOGGER.debug("[SimpleTombstone] 检测到玩家 {} 死亡，创建墓碑...", player.getUuid());
                 createTombstoneForMixin(player);
-                DEAD_PLAYERS.add(player.getUuid());
                 return false;
             }
             return true;
         });
 
         ServerPlayerEvents.AFTER_RESPAWN.register((oldPlayer, newPlayer, alive) -> {
-            UUID playerId = newPlayer.getUuid();
-            if (DEAD_PLAYERS.contains(playerId)) {
-                LOGGER.info("[SimpleTombstone] 玩家 {} 已重生，物品归还功能已启用。", newPlayer.getName().getString());
-                DEAD_PLAYERS.remove(playerId);
-                RESURRECTED_PLAYERS.add(playerId);
+            if (RECOVERY_TRACKER.onRespawn(newPlayer.getUuid())) {
+                LOGGER.debug("[SimpleTombstone] 玩家 {} 已重生，物品归还功能已启用。", newPlayer.getUuid());
             }
         });
 
         ServerTickEvents.END_SERVER_TICK.register(server -> {
-            if (config.checkDistanceEnabled) {
-                for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-                    if (RESURRECTED_PLAYERS.contains(player.getUuid())) {
-                        checkPlayerNearTombstone(player);
-                    }
-                }
+            TombstoneConfig config = TombstoneConfig.get();
+            TOMBSTONE_QUEUE.drain(config.placementsPerTick(), config.placementBudgetMicros() * 1000L,
+                    pending -> placeTombstone(server, pending));
+            if (config.checkDistanceEnabled()) {
+                RECOVERY_TRACKER.tick(server, config.proximityCheckInterval(), config.proximityChecksPerTick(),
+                        this::checkPlayerNearTombstone);
             }
         });
 
         UseBlockCallback.EVENT.register((player, world, hand, hitResult) -> {
-            if (world.isClient()) return ActionResult.PASS;
+            // 主手未处理时还会以副手再触发一次，只在主手时检查
+            if (world.isClient() || hand != Hand.MAIN_HAND) return ActionResult.PASS;
 
             BlockPos pos = hitResult.getBlockPos();
+            // 绝大多数右键的位置上没有墓碑，无需读取方块和存储
+            if (!TombstonePositionFilter.contains(world.getRegistryKey(), pos.asLong())) return ActionResult.PASS;
             BlockState state = world.getBlockState(pos);
 
             if (state.getBlock() instanceof FlowerPotBlock) {
+                long start = System.nanoTime();
                 TombstoneStorage storage = TombstoneStorage.load((ServerWorld) world);
-                List<PlayerTombstoneData> dataList = storage.getTombstoneData().get(pos);
+                List<PlayerTombstoneData> dataList = storage.getTombstones(pos);
                 if (dataList != null) {
                     for (PlayerTombstoneData data : dataList) {
                         if (data.playerId().equals(player.getUuid())) {
-                            for (ItemStack stack : data.items()) {
-                                player.getInventory().offerOrDrop(stack);
-                            }
+                            InventoryRestorer.restore(player, data.items(), data.slots());
                             world.removeBlock(pos, false);
                             storage.removeTombstone(pos, player.getUuid());
+                            RECOVERY_TRACKER.onRecovered(player.getUuid());
+                            TombstoneStats.increment(TombstoneStats.Counter.RECOVERED_RIGHT_CLICK);
                             player.sendMessage(Text.of("你的物品已经从墓碑中恢复！"), false);
-                            LOGGER.info("[SimpleTombstone] 玩家 {} 恢复了物品并删除了墓碑。", player.getName().getString());
+                            if (LOGGER.isDebugEnabled()) {
+                                LOGGER.debug("[SimpleTombstone] 玩家 {} 恢复了物品并删除了墓碑 {}。", player.getUuid(), pos.toShortString());
+                            }
                             break;
                         }
                     }
                 }
+                TombstoneStats.record(TombstoneStats.Metric.RIGHT_CLICK, start);
             }
             return ActionResult.PASS;
         });
@@ -102,129 +142,271 @@ public class SimpleTombstone implements ModInitializer {
         LOGGER.info("[SimpleTombstone] 服务器端初始化完成");
     }
 
-    public static void createTombstoneForMixin(ServerPlayerEntity player) {
-        BlockPos deathPos = player.getBlockPos();
-        World world = player.getWorld();
-        RegistryKey<World> dimension = world.getRegistryKey();
-
-        boolean deadInVoid = false;
-        while (deathPos.getY() <= world.getBottomY()) {
-            deathPos = deathPos.up();
-            deadInVoid = true;
-        }
+    static TombstoneQueue getQueue() {
+        return TOMBSTONE_QUEUE;
+    }
 
-        if (dimension == World.END && deadInVoid) {
-            deathPos = deathPos.add(0, 60, 0);
-            while (!world.isAir(deathPos)) {
-                deathPos = deathPos.up();
-            }
-        }
+    /**
+     * 重新放置崩溃前尚未放置的墓碑，回放日志时调用，玩家视为已重生
+     */
+    static void requeue(TombstoneQueue.Pending pending) {
+        RECOVERY_TRACKER.onTombstonesLoaded(pending.playerId(), 1);
+        TOMBSTONE_QUEUE.enqueue(pending);
+    }
 
-        while (world.isAir(deathPos.down()) && deathPos.getY() > 0) {
-            deathPos = deathPos.down();
+    /**
+     * 重新加载配置文件，在服务器线程中调用
+     * 新配置发布后重新计算候选花盆，并按新配置启停文件监视
+     * @return 新的配置，读取失败时返回 null 并继续使用当前配置
+     */
+    static TombstoneConfig reloadConfig(MinecraftServer server) {
+        TombstoneConfig config = TombstoneConfig.reload();
+        if (config == null) return null;
+        FlowerPotCandidates.rebuild(config);
+        if (config.watchConfigFile()) {
+            TombstoneConfigWatcher.start(server);
+        } else {
+            TombstoneConfigWatcher.stop();
         }
+        return config;
+    }
 
-        BlockPos basePos = deathPos.down();
-        BlockState baseState = world.getBlockState(basePos);
+    public static void createTombstoneForMixin(ServerPlayerEntity player) {
+        World world = player.getWorld();
 
-        if (world.getFluidState(deathPos).isOf(Fluids.WATER)) {
-            while (world.getFluidState(deathPos).isOf(Fluids.WATER) && deathPos.getY() < world.getTopY()) {
-                deathPos = deathPos.up();
-            }
-            basePos = deathPos.down();
-            BlockState below = world.getBlockState(basePos);
-            if (below.getFluidState().isOf(Fluids.WATER) || !below.isSolidBlock(world, basePos)) {
-                world.setBlockState(basePos, Blocks.GLASS.getDefaultState());
-            }
-        } else if (world.getFluidState(deathPos).isOf(Fluids.LAVA)) {
-            while (world.getFluidState(deathPos).isOf(Fluids.LAVA) && deathPos.getY() < world.getTopY()) {
-                deathPos = deathPos.up();
-            }
-            basePos = deathPos.down();
-            if (!world.getBlockState(basePos).isSolidBlock(world, basePos)) {
-                world.setBlockState(basePos, Blocks.GLASS.getDefaultState());
+        // 同时记录每个物品所在的槽位（主背包 0-35、盔甲栏 36-39、副手 40），领取时放回原位
+        int size = player.getInventory().size();
+        List<ItemStack> items = new ArrayList<>();
+        byte[] slots = new byte[size];
+        for (int i = 0; i < size; i++) {
+            ItemStack stack = player.getInventory().removeStack(i, Integer.MAX_VALUE);
+            if (!stack.isEmpty()) {
+                slots[items.size()] = (byte) i;
+                items.add(stack);
             }
-        } else if (baseState.getBlock() instanceof FluidBlock ||
-                !baseState.isFullCube(world, basePos) ||
-                !baseState.isSolidBlock(world, basePos)) {
-            world.setBlockState(basePos, Blocks.GLASS.getDefaultState());
         }
+        RECOVERY_TRACKER.onTombstoneCreated(player.getUuid());
+
+        TombstoneQueue.Pending pending = new TombstoneQueue.Pending(player.getUuid(), world.getRegistryKey(),
+                player.getBlockPos(), items, Arrays.copyOf(slots, items.size()), world.getTime(), System.nanoTime());
+        if (TombstoneConfig.get().deferredPlacement()) {
+            // 物品已经取走，先写入日志再入队，方块放置和存储写入留到之后的 tick 按预算完成
+            TombstoneStorage.load((ServerWorld) world).logPending(pending);
+            TOMBSTONE_QUEUE.enqueue(pending);
+        } else {
+            placeTombstone(player.getServer(), pending);
+        }
+    }
 
-        BlockPos tombstonePos = basePos.up();
+    /**
+     * 放置墓碑方块并写入存储，玩家此时可能已经离线
+     */
+    private static void placeTombstone(MinecraftServer server, TombstoneQueue.Pending pending) {
+        ServerWorld world = server.getWorld(pending.dimension());
+        if (world == null) {
+            // 维度已卸载：待放置记录留在该维度的日志中不做抵消，维度再次加载时回放并重新入队，物品不会丢失
+            LOGGER.warn("[SimpleTombstone] 维度 {} 已不存在，玩家 {} 在 {} 的墓碑暂不放置，维度重新加载后恢复",
+                    pending.dimension().getValue(), pending.playerId(), pending.deathPos().toShortString());
+            RECOVERY_TRACKER.onRecovered(pending.playerId());
+            return;
+        }
+        long start = System.nanoTime();
 
-        List<ItemStack> items = new ArrayList<>();
-        for (int i = 0; i < player.getInventory().size(); i++) {
-            ItemStack stack = player.getInventory().removeStack(i, Integer.MAX_VALUE);
-            if (!stack.isEmpty()) items.add(stack);
+        TombstonePlacement.Result placement = TombstonePlacement.solve(world, pending.deathPos());
+        if (placement.needsGlassBase()) {
+            world.setBlockState(placement.basePos(), Blocks.GLASS.getDefaultState());
         }
 
-        PlayerTombstoneData newData = new PlayerTombstoneData(player.getUuid(), items);
+        BlockPos tombstonePos = placement.tombstonePos();
+        PlayerTombstoneData newData = new PlayerTombstoneData(pending.playerId(), pending.items(), pending.slots(), pending.capturedTick());
 
-        TOMBSTONE_CHESTS.computeIfAbsent(tombstonePos, k -> new ArrayList<>()).add(newData);
+        TombstoneStorage storage = TombstoneStorage.load(world);
+        // 合并或淘汰的墓碑不再需要领取
+        int absorbed = storage.addTombstone(tombstonePos, newData);
+        for (int i = 0; i < absorbed; i++) {
+            RECOVERY_TRACKER.onRecovered(pending.playerId());
+        }
 
-        TombstoneStorage storage = TombstoneStorage.load((ServerWorld) world);
-        storage.addTombstone(tombstonePos, newData);
-
-        List<Block> flowerPots = Registries.BLOCK.streamEntries()
-                .map(RegistryEntry::value)
-                .filter(block -> block instanceof FlowerPotBlock && block != Blocks.FLOWER_POT)
-                .filter(block -> {
-                    String id = Registries.BLOCK.getId(block).toString();
-                    boolean inList = config.flowerPots.contains(id);
-                    return config.whitelistMode == inList;
-                })
-                .toList();
-
-        Block chosenPot = flowerPots.isEmpty() ? Blocks.POTTED_DANDELION : flowerPots.get(new Random().nextInt(flowerPots.size()));
+        Block chosenPot = FlowerPotCandidates.pick(TombstoneConfig.get());
         world.setBlockState(tombstonePos, chosenPot.getDefaultState());
 
-        player.sendMessage(Text.of("A loot chest has been placed at " + tombstonePos.toShortString()), false);
-        LOGGER.info("[SimpleTombstone] 为玩家 {} 在 {} 创建了墓碑。", player.getName().getString(), tombstonePos.toShortString());
+        ServerPlayerEntity player = server.getPlayerManager().getPlayer(pending.playerId());
+        if (player != null) {
+            player.sendMessage(Text.of("A loot chest has been placed at " + tombstonePos.toShortString()), false);
+        }
+        TombstoneStats.record(TombstoneStats.Metric.CREATE, start);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("[SimpleTombstone] 为玩家 {} 在 {} 创建了墓碑。", pending.playerId(), tombstonePos.toShortString());
+        }
     }
 
     private void checkPlayerNearTombstone(ServerPlayerEntity player) {
+        long start = System.nanoTime();
+        recoverNearby(player);
+        TombstoneStats.record(TombstoneStats.Metric.PROXIMITY_CHECK, start);
+    }
+
+    private void recoverNearby(ServerPlayerEntity player) {
         World world = player.getWorld();
-        BlockPos playerPos = player.getBlockPos();
+        int radius = TombstoneConfig.get().checkDistanceRadius();
+
+        // 尚未放置的墓碑直接归还物品
+        for (TombstoneQueue.Pending pending : TOMBSTONE_QUEUE.takeNearby(player.getUuid(), world.getRegistryKey(),
+                player.getBlockPos(), radius)) {
+            InventoryRestorer.restore(player, pending.items(), pending.slots());
+            TombstoneStorage.load((ServerWorld) world).resolvePending(pending);
+            RECOVERY_TRACKER.onRecovered(player.getUuid());
+            TombstoneStats.increment(TombstoneStats.Counter.RECOVERED_QUEUED);
+            LOGGER.debug("[SimpleTombstone] 墓碑尚未放置，直接归还玩家 {} 的物品。", player.getUuid());
+        }
+
+        // 只查找该玩家在当前维度的墓碑记录，其他维度相同坐标的墓碑不会匹配
         TombstoneStorage storage = TombstoneStorage.load((ServerWorld) world);
+        List<BlockPos> nearby = storage.findPlayerTombstones(player.getUuid(), player.getBlockPos(), radius);
+        if (nearby.isEmpty()) return;
 
-        for (BlockPos pos : BlockPos.iterate(
-                playerPos.getX() - 4, playerPos.getY() - 4, playerPos.getZ() - 4,
-                playerPos.getX() + 4, playerPos.getY() + 4, playerPos.getZ() + 4)) {
-            List<PlayerTombstoneData> dataList = TOMBSTONE_CHESTS.get(pos);
+        for (BlockPos pos : nearby) {
+            // 墓碑所在分片此时才会读取，物品此时才会解码
+            List<PlayerTombstoneData> dataList = storage.getTombstones(pos);
             if (dataList != null) {
-                Iterator<PlayerTombstoneData> it = dataList.iterator();
-                while (it.hasNext()) {
-                    PlayerTombstoneData data = it.next();
+                for (PlayerTombstoneData data : dataList) {
                     if (data.playerId().equals(player.getUuid())) {
-                        for (ItemStack stack : data.items()) {
-                            player.getInventory().offerOrDrop(stack);
-                        }
-                        pos = pos.down();
-                        if (world.getBlockState(pos.down()).getBlock() == Blocks.GLASS && pos.down().getY() != world.getBottomY()) {
-                            world.removeBlock(pos, false);
-                        }
-                        pos = pos.up();
-                        world.removeBlock(pos, false);
-                        it.remove();
-                        RESURRECTED_PLAYERS.remove(player.getUuid());
-                        storage.removeTombstone(pos, player.getUuid());
-                        LOGGER.info("[SimpleTombstone] 移除墓碑 {} 并归还物品。", pos.toShortString());
-                        break;
+                        InventoryRestorer.restore(player, data.items(), data.slots());
                     }
                 }
             }
+
+            BlockPos basePos = pos.down();
+            if (world.getBlockState(basePos.down()).getBlock() == Blocks.GLASS && basePos.down().getY() != world.getBottomY()) {
+                world.removeBlock(basePos, false);
+            }
+            world.removeBlock(pos, false);
+            storage.removeTombstone(pos, player.getUuid());
+            RECOVERY_TRACKER.onRecovered(player.getUuid());
+            TombstoneStats.increment(TombstoneStats.Counter.RECOVERED_PROXIMITY);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("[SimpleTombstone] 移除墓碑 {} 并归还物品。", pos.toShortString());
+            }
         }
     }
 
-    public record PlayerTombstoneData(UUID playerId, List<ItemStack> items) {
-            public PlayerTombstoneData(UUID playerId, List<ItemStack> items) {
-                this.playerId = playerId;
-                this.items = new ArrayList<>(items);
+    /**
+     * 单个玩家在某个位置的墓碑数据
+     * 从存档读取时只保存原始的物品 NBT（与其他墓碑共享相同的物品 NBT），第一次调用 {@link #items()} 时才解码为 ItemStack，
+     * 未解码的数据再次保存时直接写回原始 NBT
+     * createdTick 为创建（或最近一次合并）时的世界时间，回放日志时用于判断操作是否已经生效
+     */
+    public static final class PlayerTombstoneData {
+        private final UUID playerId;
+        private final long createdTick;
+        // 与物品一一对应的原背包槽位，旧存档中的墓碑为 null
+        private final byte[] slots;
+        private volatile List<ItemStack> items;
+        private volatile NbtList rawItems;
+
+        public PlayerTombstoneData(UUID playerId, List<ItemStack> items, long createdTick) {
+            this(playerId, items, null, createdTick);
+        }
+
+        /**
+         * 使用刚从玩家身上取下的物品创建墓碑数据，不做复制
+         * 列表和其中的物品从此归墓碑数据所有，可堆叠的物品会被就地合并
+         * @param slots 与物品一一对应的原背包槽位，可以为 null
+         */
+        public PlayerTombstoneData(UUID playerId, List<ItemStack> items, byte[] slots, long createdTick) {
+            this.playerId = playerId;
+            this.createdTick = createdTick;
+            List<ItemStack> compacted = TombstoneItems.compact(items, slots);
+            this.slots = slots == null || slots.length == compacted.size() ? slots : Arrays.copyOf(slots, compacted.size());
+            this.items = Collections.unmodifiableList(compacted);
+        }
+
+        private PlayerTombstoneData(UUID playerId, NbtList rawItems, byte[] slots, long createdTick) {
+            this.playerId = playerId;
+            this.createdTick = createdTick;
+            this.slots = slots;
+            this.rawItems = rawItems;
+        }
+
+        /**
+         * 使用原始物品 NBT 创建墓碑数据，不做解码
+         * 其中的物品 NBT 应已通过 {@link TombstoneItems#intern(NbtList)} 替换为共享实例
+         * @param slots 与物品一一对应的原背包槽位，长度不符（如旧存档）时传入 null
+         */
+        public static PlayerTombstoneData fromNbt(UUID playerId, NbtList rawItems, byte[] slots, long createdTick) {
+            return new PlayerTombstoneData(playerId, rawItems,
+                    slots != null && slots.length == rawItems.size() ? slots : null, createdTick);
+        }
+
+        /**
+         * 同一玩家在同一位置再次死亡时合并两份物品，合并后的墓碑视为最新的墓碑
+         */
+        public static PlayerTombstoneData merge(PlayerTombstoneData existing, PlayerTombstoneData newer) {
+            List<ItemStack> older = existing.items();
+            List<ItemStack> added = newer.items();
+            List<ItemStack> merged = new ArrayList<>(older.size() + added.size());
+            // 旧数据可能正被后台保存线程编码，合并会修改物品数量，因此复制旧物品
+            for (ItemStack stack : older) {
+                merged.add(stack.copy());
             }
+            merged.addAll(added);
+
+            // 槽位以最近一次死亡时的背包为准，旧物品不再占用原来的槽位
+            byte[] slots = null;
+            if (newer.slots != null) {
+                slots = new byte[merged.size()];
+                Arrays.fill(slots, 0, older.size(), TombstoneItems.NO_SLOT);
+                System.arraycopy(newer.slots, 0, slots, older.size(), newer.slots.length);
+            }
+            return new PlayerTombstoneData(existing.playerId, merged, slots, newer.createdTick);
+        }
+
+        public UUID playerId() {
+            return playerId;
+        }
+
+        public long createdTick() {
+            return createdTick;
+        }
 
-            @Override
-            public List<ItemStack> items() {
-                return Collections.unmodifiableList(items);
+        /**
+         * 与 {@link #items()} 一一对应的原背包槽位，没有记录时返回 null，不能修改
+         */
+        public byte[] slots() {
+            return slots;
+        }
+
+        /**
+         * 获取不可修改的物品列表，尚未解码时在此解码，只能在服务器线程调用
+         */
+        public List<ItemStack> items() {
+            List<ItemStack> decoded = items;
+            if (decoded == null) {
+                NbtList raw = rawItems;
+                List<ItemStack> stacks = new ArrayList<>(raw.size());
+                for (int i = 0; i < raw.size(); i++) {
+                    // 解码时会复制 tag，共享的物品 NBT 不会被修改
+                    stacks.add(ItemStack.fromNbt(raw.getCompound(i)));
+                }
+                decoded = Collections.unmodifiableList(stacks);
+                // 先发布解码结果再释放原始 NBT，保证后台保存线程总能读到其中之一
+                items = decoded;
+                rawItems = null;
             }
+            return decoded;
+        }
+
+        public boolean isDecoded() {
+            return rawItems == null;
+        }
+
+        /**
+         * 写出物品 NBT，未解码时直接返回原始 NBT，可在后台保存线程调用
+         */
+        public NbtList writeItems() {
+            NbtList raw = rawItems;
+            if (raw != null) return raw;
+            return TombstoneItems.encode(items);
         }
-}
\ No newline at end of file
+    }
+}
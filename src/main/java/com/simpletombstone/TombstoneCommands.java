@@ -0,0 +1,252 @@
+package com.simpletombstone;
+
+import com.mojang.authlib.GameProfile;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import net.minecraft.command.argument.BlockPosArgumentType;
+import net.minecraft.command.argument.DimensionArgumentType;
+import net.minecraft.command.argument.GameProfileArgumentType;
+import net.minecraft.item.ItemStack;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.text.ClickEvent;
+import net.minecraft.text.HoverEvent;
+import net.minecraft.text.Text;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.mojang.brigadier.arguments.IntegerArgumentType.getInteger;
+import static com.mojang.brigadier.arguments.IntegerArgumentType.integer;
+import static net.minecraft.server.command.CommandManager.argument;
+import static net.minecraft.server.command.CommandManager.literal;
+
+/**
+ * /tombstone 命令，除领取失物招领外都需要 2 级权限
+ */
+public final class TombstoneCommands {
+    private static final int PAGE_SIZE = 10;
+
+    /**
+     * 分页查询，page 从 1 开始
+     */
+    private interface PagedQuery {
+        int run(CommandContext<ServerCommandSource> context, int page) throws CommandSyntaxException;
+    }
+
+    private TombstoneCommands() {
+    }
+
+    public static void register(CommandDispatcher<ServerCommandSource> dispatcher) {
+        dispatcher.register(literal("tombstone")
+                .then(literal("stats")
+                        .requires(source -> source.hasPermissionLevel(2))
+                        .executes(context -> showStats(context.getSource()))
+                        .then(literal("reset")
+                                .executes(context -> resetStats(context.getSource()))))
+                .then(literal("reload")
+                        .requires(source -> source.hasPermissionLevel(2))
+                        .executes(context -> reloadConfig(context.getSource())))
+                .then(literal("list")
+                        .requires(source -> source.hasPermissionLevel(2))
+                        .then(literal("player")
+                                .then(paged(argument("player", GameProfileArgumentType.gameProfile()), TombstoneCommands::listByPlayer)))
+                        .then(literal("near")
+                                .then(paged(argument("radius", integer(0, 4096)), TombstoneCommands::listNear)))
+                        .then(literal("box")
+                                .then(argument("dimension", DimensionArgumentType.dimension())
+                                        .then(argument("from", BlockPosArgumentType.blockPos())
+                                                .then(paged(argument("to", BlockPosArgumentType.blockPos()), TombstoneCommands::listInBox)))))
+                        .then(literal("older")
+                                .then(paged(argument("minutes", integer(0)), TombstoneCommands::listOlderThan))))
+                .then(literal("tp")
+                        .requires(source -> source.hasPermissionLevel(2))
+                        .then(argument("dimension", DimensionArgumentType.dimension())
+                                .then(argument("pos", BlockPosArgumentType.blockPos())
+                                        .executes(TombstoneCommands::teleport))))
+                .then(literal("lostfound")
+                        .executes(context -> claimLostAndFound(context.getSource()))));
+    }
+
+    /**
+     * 不带页码时显示第 1 页，页码作为最后一个可选参数
+     */
+    private static <T extends ArgumentBuilder<ServerCommandSource, T>> T paged(T builder, PagedQuery query) {
+        return builder.executes(context -> query.run(context, 1))
+                .then(argument("page", integer(1))
+                        .executes(context -> query.run(context, getInteger(context, "page"))));
+    }
+
+    /**
+     * 玩家在所有维度中的墓碑，按维度依次从旧到新排列
+     */
+    private static int listByPlayer(CommandContext<ServerCommandSource> context, int page) throws CommandSyntaxException {
+        Collection<GameProfile> profiles = GameProfileArgumentType.getProfileArgument(context, "player");
+        MinecraftServer server = context.getSource().getServer();
+        Stream<TombstoneStorage.TombstoneEntry> results = profiles.stream()
+                .flatMap(profile -> allWorlds(server, world -> TombstoneStorage.load(world).queryByPlayer(profile.getId())));
+        return showPage(context.getSource(), "玩家墓碑", results, page);
+    }
+
+    private static int listNear(CommandContext<ServerCommandSource> context, int page) {
+        ServerCommandSource source = context.getSource();
+        Stream<TombstoneStorage.TombstoneEntry> results = TombstoneStorage.load(source.getWorld())
+                .queryInRadius(BlockPos.ofFloored(source.getPosition()), getInteger(context, "radius"));
+        return showPage(source, "附近的墓碑", results, page);
+    }
+
+    private static int listInBox(CommandContext<ServerCommandSource> context, int page) throws CommandSyntaxException {
+        ServerWorld world = DimensionArgumentType.getDimensionArgument(context, "dimension");
+        BlockBox box = BlockBox.create(BlockPosArgumentType.getBlockPos(context, "from"), BlockPosArgumentType.getBlockPos(context, "to"));
+        return showPage(context.getSource(), "范围内的墓碑", TombstoneStorage.load(world).queryInBox(box), page);
+    }
+
+    /**
+     * 存在时间不少于指定分钟数的墓碑，按维度依次从旧到新排列
+     */
+    private static int listOlderThan(CommandContext<ServerCommandSource> context, int page) {
+        long minAgeTicks = getInteger(context, "minutes") * 1200L;
+        MinecraftServer server = context.getSource().getServer();
+        Stream<TombstoneStorage.TombstoneEntry> results = allWorlds(server,
+                world -> TombstoneStorage.load(world).queryOlderThan(world.getTime(), minAgeTicks));
+        return showPage(context.getSource(), "超过 " + getInteger(context, "minutes") + " 分钟的墓碑", results, page);
+    }
+
+    /**
+     * 依次查询每个维度，flatMap 是惰性的，后面的维度只在前面的结果不够一页时才会查询
+     */
+    private static Stream<TombstoneStorage.TombstoneEntry> allWorlds(MinecraftServer server,
+                                                                    Function<ServerWorld, Stream<TombstoneStorage.TombstoneEntry>> query) {
+        return StreamSupport.stream(server.getWorlds().spliterator(), false).flatMap(query);
+    }
+
+    /**
+     * 只消费结果中的一页，每条结果可以点击传送
+     */
+    private static int showPage(ServerCommandSource source, String title, Stream<TombstoneStorage.TombstoneEntry> results, int page) {
+        TombstoneQueryIndex.Page<TombstoneStorage.TombstoneEntry> result = TombstoneQueryIndex.page(results, page - 1, PAGE_SIZE);
+        if (result.items().isEmpty()) {
+            feedback(source, page == 1 ? "[SimpleTombstone] 没有找到墓碑" : String.format("[SimpleTombstone] 第 %d 页没有结果", page));
+            return 0;
+        }
+        MinecraftServer server = source.getServer();
+        feedback(source, String.format("[SimpleTombstone] %s（第 %d 页，点击传送）", title, page));
+        int number = (page - 1) * PAGE_SIZE;
+        for (TombstoneStorage.TombstoneEntry entry : result.items()) {
+            ServerWorld world = server.getWorld(entry.dimension());
+            long ageMinutes = world == null ? 0 : (world.getTime() - entry.createdTick()) / 1200;
+            BlockPos pos = entry.pos();
+            String command = String.format("/tombstone tp %s %d %d %d", entry.dimension().getValue(), pos.getX(), pos.getY(), pos.getZ());
+            Text line = Text.literal(String.format(" %d. %s %s %s，%d 分钟前",
+                    ++number, playerName(server, entry.playerId()), entry.dimension().getValue(), pos.toShortString(), ageMinutes))
+                    .styled(style -> style
+                            .withClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, command))
+                            .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, Text.literal(command))));
+            source.sendFeedback(() -> line, false);
+        }
+        if (result.hasMore()) {
+            feedback(source, String.format(" 还有更多结果，在命令末尾加上页码 %d 查看下一页", page + 1));
+        }
+        return result.items().size();
+    }
+
+    private static String playerName(MinecraftServer server, UUID playerId) {
+        if (server.getUserCache() == null) return playerId.toString();
+        return server.getUserCache().getByUuid(playerId).map(GameProfile::getName).orElse(playerId.toString());
+    }
+
+    /**
+     * 传送到墓碑上方
+     */
+    private static int teleport(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        ServerPlayerEntity player = context.getSource().getPlayerOrThrow();
+        ServerWorld world = DimensionArgumentType.getDimensionArgument(context, "dimension");
+        BlockPos pos = BlockPosArgumentType.getBlockPos(context, "pos");
+        if (!TombstonePositionFilter.contains(world.getRegistryKey(), pos.asLong())) {
+            context.getSource().sendError(Text.literal("[SimpleTombstone] 该位置没有墓碑"));
+            return 0;
+        }
+        player.teleport(world, pos.getX() + 0.5, pos.getY() + 1, pos.getZ() + 0.5, player.getYaw(), player.getPitch());
+        return 1;
+    }
+
+    /**
+     * 领取过期墓碑中被移入失物招领的物品，失物招领按维度保存，依次取出所有维度中的物品
+     */
+    private static int claimLostAndFound(ServerCommandSource source) throws CommandSyntaxException {
+        ServerPlayerEntity player = source.getPlayerOrThrow();
+        List<ItemStack> stacks = new ArrayList<>();
+        for (ServerWorld world : source.getServer().getWorlds()) {
+            for (TombstoneLostAndFound.Batch batch : TombstoneStorage.load(world).claimLostAndFound(player.getUuid())) {
+                for (int i = 0; i < batch.items().size(); i++) {
+                    stacks.add(ItemStack.fromNbt(batch.items().getCompound(i)));
+                }
+            }
+        }
+        if (stacks.isEmpty()) {
+            feedback(source, "失物招领中没有你的物品。");
+            return 0;
+        }
+        InventoryRestorer.restore(player, stacks, null);
+        feedback(source, String.format("已领取失物招领中的 %d 组物品。", stacks.size()));
+        return stacks.size();
+    }
+
+    private static int showStats(ServerCommandSource source) {
+        feedback(source, "[SimpleTombstone] 运行统计（耗时单位 μs，百分位为估算值）");
+        for (TombstoneStats.Metric metric : TombstoneStats.Metric.values()) {
+            long count = TombstoneStats.count(metric);
+            if (count == 0) {
+                feedback(source, String.format(" %s: 0 次", metric.label()));
+                continue;
+            }
+            feedback(source, String.format(" %s: %d 次，平均 %.1f，p50 ≤ %.1f，p99 ≤ %.1f，最大 %.1f",
+                    metric.label(), count,
+                    TombstoneStats.totalNanos(metric) / (double) count / 1000,
+                    TombstoneStats.percentileNanos(metric, 0.5) / 1000.0,
+                    TombstoneStats.percentileNanos(metric, 0.99) / 1000.0,
+                    TombstoneStats.maxNanos(metric) / 1000.0));
+        }
+        for (TombstoneStats.Counter counter : TombstoneStats.Counter.values()) {
+            feedback(source, String.format(" %s: %d", counter.label(), TombstoneStats.get(counter)));
+        }
+        for (Map.Entry<RegistryKey<World>, AtomicInteger> entry : TombstoneStats.indexSizes().entrySet()) {
+            feedback(source, String.format(" 墓碑数 %s: %d", entry.getKey().getValue(), entry.getValue().get()));
+        }
+        TombstoneQueue queue = SimpleTombstone.getQueue();
+        feedback(source, String.format(" 待放置队列: %d，最大排队延迟 %d μs",
+                queue.depth(), queue.getMaxLatencyNanos() / 1000));
+        feedback(source, String.format(" 异步保存失败: %d 次", TombstoneSaver.getFailureCount()));
+        return 1;
+    }
+
+    private static int resetStats(ServerCommandSource source) {
+        TombstoneStats.reset();
+        feedback(source, "[SimpleTombstone] 运行统计已清空");
+        return 1;
+    }
+
+    private static int reloadConfig(ServerCommandSource source) {
+        if (SimpleTombstone.reloadConfig(source.getServer()) == null) {
+            source.sendError(Text.literal("[SimpleTombstone] 配置文件读取失败，继续使用当前配置，详见服务器日志"));
+            return 0;
+        }
+        feedback(source, "[SimpleTombstone] 配置已重新加载");
+        return 1;
+    }
+
+    private static void feedback(ServerCommandSource source, String message) {
+        source.sendFeedback(() -> Text.literal(message), false);
+    }
+}
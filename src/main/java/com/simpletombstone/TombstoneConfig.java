@@ -9,27 +9,143 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * 配置类用于管理模组的配置文件
  * 默认配置文件路径：config/simpletombstone.json
  * 默认值：黑名单模式，花盆列表为空
+ * <p>
+ * 运行时所有代码共享 {@link #get()} 返回的同一份配置，配置项只能通过访问方法读取，发布后不会再被修改；
+ * 重新加载时读取出完整的新配置再整体替换，读取方不会看到改了一半的配置，也不需要读取文件
  */
 public class TombstoneConfig {
     // 添加maxTombstonesPerPlayer配置项
-    public int maxTombstonesPerPlayer = 0;
+    private int maxTombstonesPerPlayer = 0;
 
     // 新增距离检测开关配置项，默认开启
-    public boolean checkDistanceEnabled = true;
+    private boolean checkDistanceEnabled = true;
+
+    // 距离检测半径（方块），以玩家为中心的立方体范围，默认 4
+    private int checkDistanceRadius = 4;
+
+    // 距离检测间隔（tick），每隔多少 tick 轮询一次待领取墓碑的玩家，默认 1
+    private int proximityCheckInterval = 1;
+
+    // 每次轮询最多对多少名位置发生变化的玩家执行检测，默认 20
+    private int proximityChecksPerTick = 20;
+
+    // 异步保存开关，开启后墓碑数据在后台线程中编码和写盘，默认开启
+    private boolean asyncSave = true;
+
+    // 预写日志开关，开启后每次添加或移除墓碑都会由后台线程写入日志并 fsync，崩溃后可恢复（尚未写盘的最近几毫秒内的操作除外），默认开启
+    private boolean journalEnabled = true;
+
+    // 延迟放置开关，开启后死亡时只取走物品（同时写入日志），墓碑在之后的 tick 中按预算放置，默认关闭
+    private boolean deferredPlacement = false;
+
+    // 延迟放置时每 tick 最多放置的墓碑数，默认 5
+    private int placementsPerTick = 5;
+
+    // 延迟放置时每 tick 用于放置墓碑的时间预算（微秒），默认 2000
+    private int placementBudgetMicros = 2000;
+
+    // 墓碑过期时间（分钟，按世界时间计算），0 表示永不过期，默认 0
+    private int expiryMinutes = 0;
+
+    // 墓碑过期后的处理方式，默认移入失物招领
+    private ExpiryAction expiryAction = ExpiryAction.LOST_AND_FOUND;
+
+    // 监视配置文件，修改后自动重新加载，默认开启；也可以使用 /tombstone reload 手动重新加载
+    private boolean watchConfigFile = true;
+
+    /**
+     * 墓碑过期后的处理方式
+     * DROP: 在墓碑位置掉落物品，墓碑所在区块未加载时等到区块加载后再掉落
+     * LOST_AND_FOUND: 物品移入失物招领，玩家可通过 /tombstone lostfound 领取
+     * DELETE: 直接删除物品
+     */
+    public enum ExpiryAction {
+        DROP,
+        LOST_AND_FOUND,
+        DELETE
+    }
+
+    public int maxTombstonesPerPlayer() {
+        return maxTombstonesPerPlayer;
+    }
+
+    public boolean checkDistanceEnabled() {
+        return checkDistanceEnabled;
+    }
+
+    public int checkDistanceRadius() {
+        return checkDistanceRadius;
+    }
+
+    public int proximityCheckInterval() {
+        return proximityCheckInterval;
+    }
+
+    public int proximityChecksPerTick() {
+        return proximityChecksPerTick;
+    }
+
+    public boolean asyncSave() {
+        return asyncSave;
+    }
+
+    public boolean journalEnabled() {
+        return journalEnabled;
+    }
+
+    public boolean deferredPlacement() {
+        return deferredPlacement;
+    }
+
+    public int placementsPerTick() {
+        return placementsPerTick;
+    }
+
+    public int placementBudgetMicros() {
+        return placementBudgetMicros;
+    }
+
+    public int expiryMinutes() {
+        return expiryMinutes;
+    }
+
+    public ExpiryAction expiryAction() {
+        return expiryAction;
+    }
+
+    public boolean watchConfigFile() {
+        return watchConfigFile;
+    }
+
+    public boolean whitelistMode() {
+        return whitelistMode;
+    }
+
+    public Set<String> flowerPots() {
+        return flowerPots;
+    }
+
+    /**
+     * 过期时间（tick），0 表示永不过期
+     */
+    public long expiryTicks() {
+        return Math.max(0, expiryMinutes) * 1200L;
+    }
     
-    private static final Path CONFIG_DIR = FabricLoader.getInstance().getConfigDir();
-    private static final Path CONFIG_PATH = CONFIG_DIR.resolve("simpletombstone.json");
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     
     // 添加日志记录器
     private static final Logger LOGGER = LoggerFactory.getLogger(TombstoneConfig.class);
+
+    // 当前生效的配置
+    private static volatile TombstoneConfig current;
     
     /**
      * 白名单/黑名单模式
@@ -37,15 +153,56 @@ public class TombstoneConfig {
      * false: 黑名单模式 - 禁止配置的花盆类型
      * 默认为黑名单模式
      */
-    public boolean whitelistMode = false;
+    private boolean whitelistMode = false;
     
     /**
      * 花盆列表
      * 包含要包含或排除的花盆名称
      * 支持完整命名空间格式（如 "minecraft:flower_pot"）
-     * 默认为空数组
+     * 默认为空数组，加载后以哈希集合保存
      */
-    public List<String> flowerPots = new ArrayList<>();
+    private Set<String> flowerPots = new HashSet<>();
+
+    /**
+     * 配置文件路径，在使用时才向 Fabric Loader 查询，便于在没有 Loader 的环境（如基准测试）中创建配置对象
+     */
+    static Path configPath() {
+        return FabricLoader.getInstance().getConfigDir().resolve("simpletombstone.json");
+    }
+
+    /**
+     * 获取当前生效的配置，第一次调用时从文件加载，之后不会再读取文件
+     */
+    public static TombstoneConfig get() {
+        TombstoneConfig config = current;
+        if (config == null) {
+            synchronized (TombstoneConfig.class) {
+                config = current;
+                if (config == null) {
+                    config = load();
+                    current = config;
+                }
+            }
+        }
+        return config;
+    }
+
+    /**
+     * 重新读取配置文件并替换当前配置
+     * 文件无法读取或格式错误时保留当前配置
+     * @return 新的配置，失败时返回 null
+     */
+    public static synchronized TombstoneConfig reload() {
+        try {
+            TombstoneConfig config = read();
+            current = config;
+            LOGGER.info("[SimpleTombstone] 配置已重新加载");
+            return config;
+        } catch (Exception e) {
+            LOGGER.error("重新加载配置时发生错误，继续使用当前配置", e);
+            return null;
+        }
+    }
 
     /**
      * 加载配置
@@ -54,19 +211,52 @@ public class TombstoneConfig {
      */
     public static TombstoneConfig load() {
         try {
-            if (!Files.exists(CONFIG_PATH)) {
-                // 创建默认配置
-                saveDefaultConfig();
-            }
-            
-            Reader reader = new FileReader(CONFIG_PATH.toFile());
-            TombstoneConfig config = GSON.fromJson(reader, TombstoneConfig.class);
-            reader.close();
-            return config;
+            return read();
         } catch (Exception e) {
             LOGGER.error("加载配置时发生错误", e);
-            return new TombstoneConfig(); // 返回默认配置
+            return new TombstoneConfig().normalize(); // 返回默认配置
+        }
+    }
+
+    /**
+     * 从 JSON 文本创建配置，未出现的配置项使用默认值，不读写配置文件（用于基准测试）
+     */
+    static TombstoneConfig fromJson(String json) {
+        TombstoneConfig config = GSON.fromJson(json, TombstoneConfig.class);
+        return (config == null ? new TombstoneConfig() : config).normalize();
+    }
+
+    private static TombstoneConfig read() throws IOException {
+        if (!Files.exists(configPath())) {
+            // 创建默认配置
+            saveDefaultConfig();
+        }
+
+        TombstoneConfig config;
+        try (Reader reader = new FileReader(configPath().toFile())) {
+            config = GSON.fromJson(reader, TombstoneConfig.class);
+        }
+        if (config == null) {
+            throw new IOException("配置文件为空");
+        }
+        return config.normalize();
+    }
+
+    /**
+     * 修正超出范围的配置项，花盆列表替换为不可修改的集合
+     * 只在发布前调用一次，依赖配置的计算（如靠近检测半径）不需要再做检查
+     */
+    TombstoneConfig normalize() {
+        checkDistanceRadius = Math.max(0, checkDistanceRadius);
+        proximityCheckInterval = Math.max(1, proximityCheckInterval);
+        proximityChecksPerTick = Math.max(1, proximityChecksPerTick);
+        placementsPerTick = Math.max(1, placementsPerTick);
+        placementBudgetMicros = Math.max(0, placementBudgetMicros);
+        if (expiryAction == null) {
+            expiryAction = ExpiryAction.LOST_AND_FOUND;
         }
+        flowerPots = flowerPots == null ? Set.of() : Set.copyOf(flowerPots);
+        return this;
     }
 
     /**
@@ -74,7 +264,7 @@ public class TombstoneConfig {
      */
     public void save() {
         try {
-            Writer writer = new FileWriter(CONFIG_PATH.toFile());
+            Writer writer = new FileWriter(configPath().toFile());
             GSON.toJson(this, writer);
             writer.close();
         } catch (IOException e) {
@@ -89,7 +279,7 @@ public class TombstoneConfig {
         // 从资源目录复制默认配置
         InputStream in = SimpleTombstone.class.getClassLoader().getResourceAsStream("defaultconfigs/simpletombstone.json");
         if (in != null) {
-            Files.copy(in, CONFIG_PATH);
+            Files.copy(in, configPath());
             in.close();
         } else {
             // 如果没有找到默认配置资源，创建一个空的
@@ -0,0 +1,82 @@
+package com.simpletombstone;
+
+import net.minecraft.server.MinecraftServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 监视配置文件，文件修改后在服务器线程中重新加载配置
+ * 监视线程只负责接收文件系统事件，读取和发布配置都交给服务器线程，与 /tombstone reload 走同一条路径；
+ * 一次保存通常会产生多个事件，尚未执行的重新加载不会重复提交
+ */
+public final class TombstoneConfigWatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TombstoneConfigWatcher.class);
+
+    private static WatchService watchService;
+    private static Thread thread;
+    private static final AtomicBoolean RELOAD_SCHEDULED = new AtomicBoolean();
+
+    private TombstoneConfigWatcher() {
+    }
+
+    public static synchronized void start(MinecraftServer server) {
+        if (thread != null) return;
+        Path file = TombstoneConfig.configPath();
+        try {
+            watchService = file.getFileSystem().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            LOGGER.error("无法监视配置文件 {}，请使用 /tombstone reload 重新加载配置", file, e);
+            closeQuietly();
+            return;
+        }
+
+        WatchService service = watchService;
+        Path fileName = file.getFileName();
+        thread = new Thread(() -> watch(server, service, fileName), "SimpleTombstone-ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static synchronized void stop() {
+        if (thread == null) return;
+        thread.interrupt();
+        thread = null;
+        closeQuietly();
+    }
+
+    private static void watch(MinecraftServer server, WatchService service, Path fileName) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (fileName.equals(event.context())) changed = true;
+                }
+                key.reset();
+                if (changed && RELOAD_SCHEDULED.compareAndSet(false, true)) {
+                    server.execute(() -> {
+                        RELOAD_SCHEDULED.set(false);
+                        SimpleTombstone.reloadConfig(server);
+                    });
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 服务器关闭
+        }
+    }
+
+    private static void closeQuietly() {
+        if (watchService == null) return;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.warn("关闭配置文件监视时发生错误", e);
+        }
+        watchService = null;
+    }
+}
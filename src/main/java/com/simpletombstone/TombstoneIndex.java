@@ -0,0 +1,67 @@
+package com.simpletombstone;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * 单个维度内已读取分片中的墓碑数据，以位置打包后的 long 为键
+ */
+public class TombstoneIndex {
+    // 位置 long -> 该位置上各玩家的墓碑数据
+    private final Long2ObjectOpenHashMap<List<SimpleTombstone.PlayerTombstoneData>> byPos = new Long2ObjectOpenHashMap<>();
+
+    public List<SimpleTombstone.PlayerTombstoneData> get(BlockPos pos) {
+        return byPos.get(pos.asLong());
+    }
+
+    /**
+     * 获取位置上的墓碑列表，不存在时创建
+     */
+    public List<SimpleTombstone.PlayerTombstoneData> getOrCreate(BlockPos pos) {
+        long key = pos.asLong();
+        List<SimpleTombstone.PlayerTombstoneData> list = byPos.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            byPos.put(key, list);
+        }
+        return list;
+    }
+
+    public List<SimpleTombstone.PlayerTombstoneData> remove(BlockPos pos) {
+        return byPos.remove(pos.asLong());
+    }
+
+    /**
+     * 从位置的墓碑列表中移除指定玩家的数据，列表为空时一并移除该位置
+     * @return 移除的数据条数
+     */
+    public int remove(BlockPos pos, UUID playerId) {
+        List<SimpleTombstone.PlayerTombstoneData> list = byPos.get(pos.asLong());
+        if (list == null) return 0;
+        int before = list.size();
+        list.removeIf(data -> data.playerId().equals(playerId));
+        int removed = before - list.size();
+        if (list.isEmpty()) {
+            remove(pos);
+        }
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return byPos.isEmpty();
+    }
+
+    public int size() {
+        return byPos.size();
+    }
+
+    public void forEach(BiConsumer<BlockPos, List<SimpleTombstone.PlayerTombstoneData>> consumer) {
+        for (Long2ObjectMap.Entry<List<SimpleTombstone.PlayerTombstoneData>> entry : byPos.long2ObjectEntrySet()) {
+            consumer.accept(BlockPos.fromLong(entry.getLongKey()), entry.getValue());
+        }
+    }
+}
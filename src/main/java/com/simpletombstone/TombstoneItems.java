@@ -0,0 +1,92 @@
+package com.simpletombstone;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+
+import java.util.List;
+
+/**
+ * 墓碑物品的紧凑存储
+ * 创建墓碑时合并可堆叠的物品，物品 NBT 在所有墓碑之间共享同一份实例（如 64 个圆石、同样附魔的书），
+ * 共享的 NBT 只会被读取：解码为 ItemStack 时会复制 tag，写盘时只读，因此不能修改这里返回的任何 NBT
+ */
+public final class TombstoneItems {
+    // 物品没有记录原来所在的背包槽位
+    public static final byte NO_SLOT = -1;
+
+    // 弱引用驻留，没有墓碑引用的 NBT 可以被回收；线程安全，后台保存线程也会调用
+    private static final Interner<NbtElement> INTERNER = Interners.newWeakInterner();
+
+    private TombstoneItems() {
+    }
+
+    public static List<ItemStack> compact(List<ItemStack> stacks) {
+        return compact(stacks, null);
+    }
+
+    /**
+     * 就地合并列表中可堆叠的物品，每堆不超过最大堆叠数，保持物品第一次出现的顺序
+     * 列表和其中的物品必须归调用方所有，合并时会修改物品数量
+     * @param slots 与物品一一对应的原背包槽位，会随物品一起就地调整；可以为 null。
+     *              不为 null 时只合并同一槽位的物品（如再次死亡合并的墓碑、没有槽位的物品），
+     *              不同槽位的物品保持分开，领取时才能各自放回原位
+     */
+    public static List<ItemStack> compact(List<ItemStack> stacks, byte[] slots) {
+        int size = stacks.size();
+        if (size < 2) return stacks;
+        int write = 0;
+        for (int read = 0; read < size; read++) {
+            ItemStack stack = stacks.get(read);
+            if (stack.isEmpty()) continue;
+            if (stack.isStackable()) {
+                for (int i = 0; i < write && !stack.isEmpty(); i++) {
+                    if (slots != null && slots[i] != slots[read]) continue;
+                    ItemStack target = stacks.get(i);
+                    if (target.getCount() < target.getMaxCount() && ItemStack.canCombine(target, stack)) {
+                        int moved = Math.min(stack.getCount(), target.getMaxCount() - target.getCount());
+                        target.increment(moved);
+                        stack.decrement(moved);
+                    }
+                }
+                if (stack.isEmpty()) continue;
+            }
+            if (slots != null) {
+                slots[write] = slots[read];
+            }
+            stacks.set(write++, stack);
+        }
+        if (write < size) {
+            stacks.subList(write, size).clear();
+        }
+        return stacks;
+    }
+
+    /**
+     * 编码物品列表，相同的物品 NBT 共享同一个实例
+     */
+    public static NbtList encode(List<ItemStack> stacks) {
+        NbtList list = new NbtList();
+        for (ItemStack stack : stacks) {
+            list.add(intern(stack.writeNbt(new NbtCompound())));
+        }
+        return list;
+    }
+
+    /**
+     * 就地把列表中的物品 NBT 替换为共享实例，列表必须归调用方所有
+     */
+    public static NbtList intern(NbtList list) {
+        for (int i = 0; i < list.size(); i++) {
+            list.set(i, intern(list.get(i)));
+        }
+        return list;
+    }
+
+    public static NbtElement intern(NbtElement element) {
+        return INTERNER.intern(element);
+    }
+}
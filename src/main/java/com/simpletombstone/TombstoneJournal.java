@@ -0,0 +1,428 @@
+package com.simpletombstone;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.util.math.BlockPos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 墓碑操作的预写日志
+ * 每次添加或移除墓碑都会追加一条记录，由后台线程批量写入并 fsync，
+ * 同一批次内的多条记录只需一次 fsync。服务器崩溃后加载存档时回放日志，
+ * 存档保存完成后删除已被快照覆盖的旧日志文件
+ * <p>
+ * 追加记录时不等待写盘：记录从追加到 fsync 完成之间（通常为一次 fsync 的时间）崩溃会丢失。
+ * 保存存档和关闭服务器时调用 {@link #awaitPendingWrites()} 等待之前追加的记录全部写盘。
+ * 写盘失败的记录不会丢弃：文件截断回上次 fsync 的位置，记录在下一次刷盘时重新写入，
+ * 同时 {@link #hasWriteFailure()} 使存储保持脏标记，下一次保存的快照会覆盖这些记录
+ * <p>
+ * 墓碑过期移入失物招领时，过期记录中带有移入的物品，失物招领和墓碑记录一起回放。
+ * 延迟放置时，死亡时取走的物品在入队时就写入一条待放置记录，放置后的添加记录（玩家和创建时间相同）
+ * 或直接归还时的完成记录与之抵消；回放结束后仍未抵消的记录交给调用方重新入队
+ * <p>
+ * 日志按代编号，文件名为 simple_tombstone.journal.&lt;代&gt;，保存快照时切换到新的一代，
+ * 快照写盘完成后删除更早的代。回放的操作都是幂等的，旧日志残留不会造成重复
+ */
+public class TombstoneJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TombstoneJournal.class);
+    private static final String FILE_PREFIX = "simple_tombstone.journal.";
+    private static final String KEY_OP = "Op";
+    private static final String KEY_POS = "Pos";
+    private static final String KEY_PLAYER_ID = "PlayerId";
+    private static final String KEY_CREATED_TICK = "CreatedTick";
+    private static final String KEY_ITEMS = "Items";
+    private static final String KEY_SLOTS = "Slots";
+    private static final byte OP_ADD = 0;
+    private static final byte OP_REMOVE = 1;
+    private static final byte OP_PENDING = 2;
+    private static final byte OP_RESOLVE = 3;
+    private static final byte OP_EXPIRE = 4;
+    private static final byte OP_CLAIM = 5;
+    private static final String KEY_POSITIONS = "Positions";
+    private static final String KEY_CREATED_TICKS = "CreatedTicks";
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SimpleTombstone-Journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private record Record(long generation, NbtCompound payload) {
+    }
+
+    /**
+     * 回放日志时的回调
+     */
+    public interface Replayer {
+        /**
+         * @param slots 物品原来所在的背包槽位，没有记录时为 null
+         */
+        void add(BlockPos pos, UUID playerId, long createdTick, NbtList items, byte[] slots);
+
+        void remove(BlockPos pos, UUID playerId);
+
+        /**
+         * 延迟放置的墓碑已取走物品但尚未放置
+         * @param deathPos 死亡位置
+         * @param capturedTick 取走物品时的世界时间，放置后即为墓碑的创建时间
+         */
+        void pending(BlockPos deathPos, UUID playerId, long capturedTick, NbtList items, byte[] slots);
+
+        /**
+         * 尚未放置的墓碑已直接归还给玩家
+         */
+        void resolve(UUID playerId, long capturedTick);
+
+        /**
+         * 墓碑过期并移除
+         * @param lostAndFound 移入失物招领的物品，没有移入时为 null
+         */
+        void expire(BlockPos pos, UUID playerId, long createdTick, NbtList lostAndFound);
+
+        /**
+         * 玩家领取了失物招领中来自这些墓碑（位置和创建时间一一对应）的物品
+         */
+        void claim(UUID playerId, long[] positions, long[] createdTicks);
+    }
+
+    private final Path directory;
+    private final ConcurrentLinkedQueue<Record> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile long generation;
+
+    // 有记录写盘失败，由日志线程设置，保存快照时清除
+    private final AtomicBoolean writeFailed = new AtomicBoolean();
+
+    // 以下字段只在日志线程中访问
+    private FileChannel channel;
+    private long channelGeneration = -1;
+    // 当前文件上次 fsync 完成时的长度
+    private long syncedSize;
+    // 写盘失败、留到下一次刷盘重试的记录
+    private final List<Record> unsynced = new ArrayList<>();
+
+    public TombstoneJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 按代的顺序回放目录中所有日志，之后的新记录写入新的一代
+     * @return 回放的记录数
+     */
+    public int replay(Replayer replayer) {
+        long maxGeneration = -1;
+        int count = 0;
+        for (long gen : listGenerations()) {
+            maxGeneration = Math.max(maxGeneration, gen);
+            count += replayFile(fileFor(gen), replayer);
+        }
+        generation = maxGeneration + 1;
+        return count;
+    }
+
+    private int replayFile(Path file, Replayer replayer) {
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int checksum = in.readInt();
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                if (checksum != crc(bytes)) {
+                    LOGGER.warn("墓碑日志 {} 末尾记录损坏，已忽略之后的内容", file.getFileName());
+                    break;
+                }
+
+                NbtCompound payload = NbtIo.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+                BlockPos pos = BlockPos.fromLong(payload.getLong(KEY_POS));
+                UUID playerId = payload.getUuid(KEY_PLAYER_ID);
+                long createdTick = payload.getLong(KEY_CREATED_TICK);
+                switch (payload.getByte(KEY_OP)) {
+                    case OP_ADD -> replayer.add(pos, playerId, createdTick, payload.getList(KEY_ITEMS, NbtElement.COMPOUND_TYPE), slots(payload));
+                    case OP_REMOVE -> replayer.remove(pos, playerId);
+                    case OP_PENDING -> replayer.pending(pos, playerId, createdTick, payload.getList(KEY_ITEMS, NbtElement.COMPOUND_TYPE), slots(payload));
+                    case OP_RESOLVE -> replayer.resolve(playerId, createdTick);
+                    case OP_EXPIRE -> replayer.expire(pos, playerId, createdTick,
+                            payload.contains(KEY_ITEMS, NbtElement.LIST_TYPE) ? payload.getList(KEY_ITEMS, NbtElement.COMPOUND_TYPE) : null);
+                    case OP_CLAIM -> replayer.claim(playerId, payload.getLongArray(KEY_POSITIONS), payload.getLongArray(KEY_CREATED_TICKS));
+                    default -> LOGGER.warn("墓碑日志 {} 中有未知的操作 {}，已忽略", file.getFileName(), payload.getByte(KEY_OP));
+                }
+                count++;
+            }
+        } catch (EOFException e) {
+            LOGGER.warn("墓碑日志 {} 末尾记录不完整，已忽略", file.getFileName());
+        } catch (IOException e) {
+            LOGGER.error("读取墓碑日志 {} 时发生错误", file.getFileName(), e);
+        }
+        return count;
+    }
+
+    private static byte[] slots(NbtCompound payload) {
+        return payload.contains(KEY_SLOTS, NbtElement.BYTE_ARRAY_TYPE) ? payload.getByteArray(KEY_SLOTS) : null;
+    }
+
+    public void logAdd(BlockPos pos, UUID playerId, long createdTick, NbtList items, byte[] slots) {
+        append(itemsPayload(OP_ADD, pos, playerId, createdTick, items, slots));
+    }
+
+    /**
+     * 记录延迟放置的墓碑已取走物品，入队时调用
+     */
+    public void logPending(BlockPos deathPos, UUID playerId, long capturedTick, NbtList items, byte[] slots) {
+        append(itemsPayload(OP_PENDING, deathPos, playerId, capturedTick, items, slots));
+    }
+
+    /**
+     * 记录尚未放置的墓碑已直接归还给玩家
+     */
+    public void logResolve(BlockPos deathPos, UUID playerId, long capturedTick) {
+        NbtCompound payload = new NbtCompound();
+        payload.putByte(KEY_OP, OP_RESOLVE);
+        payload.putLong(KEY_POS, deathPos.asLong());
+        payload.putUuid(KEY_PLAYER_ID, playerId);
+        payload.putLong(KEY_CREATED_TICK, capturedTick);
+        append(payload);
+    }
+
+    /**
+     * 记录墓碑过期移除
+     * @param lostAndFound 移入失物招领的物品，没有移入时为 null
+     */
+    public void logExpire(BlockPos pos, UUID playerId, long createdTick, NbtList lostAndFound) {
+        NbtCompound payload = new NbtCompound();
+        payload.putByte(KEY_OP, OP_EXPIRE);
+        payload.putLong(KEY_POS, pos.asLong());
+        payload.putUuid(KEY_PLAYER_ID, playerId);
+        payload.putLong(KEY_CREATED_TICK, createdTick);
+        if (lostAndFound != null) {
+            payload.put(KEY_ITEMS, lostAndFound);
+        }
+        append(payload);
+    }
+
+    /**
+     * 记录玩家领取了失物招领中的物品
+     */
+    public void logClaim(UUID playerId, long[] positions, long[] createdTicks) {
+        NbtCompound payload = new NbtCompound();
+        payload.putByte(KEY_OP, OP_CLAIM);
+        payload.putUuid(KEY_PLAYER_ID, playerId);
+        payload.putLongArray(KEY_POSITIONS, positions);
+        payload.putLongArray(KEY_CREATED_TICKS, createdTicks);
+        append(payload);
+    }
+
+    private static NbtCompound itemsPayload(byte op, BlockPos pos, UUID playerId, long createdTick, NbtList items, byte[] slots) {
+        NbtCompound payload = new NbtCompound();
+        payload.putByte(KEY_OP, op);
+        payload.putLong(KEY_POS, pos.asLong());
+        payload.putUuid(KEY_PLAYER_ID, playerId);
+        payload.putLong(KEY_CREATED_TICK, createdTick);
+        payload.put(KEY_ITEMS, items);
+        if (slots != null) {
+            payload.putByteArray(KEY_SLOTS, slots);
+        }
+        return payload;
+    }
+
+    public void logRemove(BlockPos pos, UUID playerId) {
+        NbtCompound payload = new NbtCompound();
+        payload.putByte(KEY_OP, OP_REMOVE);
+        payload.putLong(KEY_POS, pos.asLong());
+        payload.putUuid(KEY_PLAYER_ID, playerId);
+        append(payload);
+    }
+
+    /**
+     * 追加一条记录，若当前没有待执行的刷盘任务则提交一个
+     * 刷盘期间追加的记录会在下一次刷盘中一起写入
+     */
+    private void append(NbtCompound payload) {
+        pending.add(new Record(generation, payload));
+        if (flushScheduled.compareAndSet(false, true)) {
+            EXECUTOR.execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        Record record;
+        while ((record = pending.poll()) != null) {
+            unsynced.add(record);
+        }
+        if (unsynced.isEmpty()) return;
+
+        List<Record> batch = new ArrayList<>(unsynced);
+        unsynced.clear();
+        // batch 中下标小于 synced 的记录已经 fsync
+        int synced = 0;
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                record = batch.get(i);
+                // 比当前文件更早的记录已被快照覆盖，无需写入
+                if (record.generation() < channelGeneration) continue;
+                if (record.generation() > channelGeneration) {
+                    sync();
+                    synced = i;
+                    openGeneration(record.generation());
+                }
+                channel.write(encode(record.payload()));
+            }
+            sync();
+        } catch (IOException e) {
+            unsynced.addAll(batch.subList(synced, batch.size()));
+            writeFailed.set(true);
+            LOGGER.error("写入墓碑日志时发生错误，{} 条记录将在下次写入时重试", unsynced.size(), e);
+            abandonChannel();
+        }
+    }
+
+    private void sync() throws IOException {
+        if (channel == null) return;
+        channel.force(false);
+        syncedSize = channel.size();
+    }
+
+    /**
+     * 写盘失败后把文件截断回上次 fsync 的位置并关闭，重试时重新打开
+     * 不截断的话，重试的记录会接在写了一半的记录之后，回放时校验失败而被忽略
+     */
+    private void abandonChannel() {
+        if (channel == null) return;
+        try {
+            channel.truncate(syncedSize);
+        } catch (IOException e) {
+            LOGGER.warn("截断墓碑日志 {} 时发生错误", fileFor(channelGeneration).getFileName(), e);
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        channel = null;
+        channelGeneration = -1;
+    }
+
+    private void openGeneration(long gen) throws IOException {
+        if (channel != null) channel.close();
+        channel = null;
+        channelGeneration = -1;
+        Files.createDirectories(directory);
+        channel = FileChannel.open(fileFor(gen), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        channelGeneration = gen;
+        syncedSize = channel.size();
+    }
+
+    /**
+     * 是否有记录写盘失败，存储据此保持脏标记
+     */
+    public boolean hasWriteFailure() {
+        return writeFailed.get();
+    }
+
+    /**
+     * 生成快照前调用，失败的记录已由快照覆盖
+     */
+    public void clearWriteFailure() {
+        writeFailed.set(false);
+    }
+
+    private static ByteBuffer encode(NbtCompound payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        NbtIo.write(payload, new DataOutputStream(bytes));
+        byte[] data = bytes.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(8 + data.length);
+        buffer.putInt(data.length).putInt(crc(data)).put(data).flip();
+        return buffer;
+    }
+
+    private static int crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 在主线程生成快照时调用，之后的记录写入新的一代
+     * @return 已被本次快照覆盖的代（不含），写盘完成后可删除更早的日志
+     */
+    public long rotate() {
+        return ++generation;
+    }
+
+    /**
+     * 删除早于指定代的日志文件
+     */
+    public void deleteBefore(long gen) {
+        for (long old : listGenerations()) {
+            if (old < gen) {
+                try {
+                    Files.deleteIfExists(fileFor(old));
+                } catch (IOException e) {
+                    LOGGER.error("删除墓碑日志 {} 时发生错误", fileFor(old).getFileName(), e);
+                }
+            }
+        }
+    }
+
+    private Path fileFor(long gen) {
+        return directory.resolve(FILE_PREFIX + gen);
+    }
+
+    private List<Long> listGenerations() {
+        List<Long> generations = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return generations;
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(FILE_PREFIX))
+                    .forEach(name -> {
+                        try {
+                            generations.add(Long.parseLong(name.substring(FILE_PREFIX.length())));
+                        } catch (NumberFormatException ignored) {
+                        }
+                    });
+        } catch (IOException e) {
+            LOGGER.error("列出墓碑日志时发生错误", e);
+        }
+        generations.sort(null);
+        return generations;
+    }
+
+    /**
+     * 等待此前追加的所有日志记录写盘（fsync）完成，保存存档和服务器关闭时调用
+     * 日志线程是单线程的，排在所有已提交的刷盘任务之后执行一个空任务即可
+     */
+    public static void awaitPendingWrites() {
+        try {
+            EXECUTOR.submit(() -> {
+            }).get(30, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.error("等待墓碑日志写盘超时");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.error("等待墓碑日志写盘时发生错误", e);
+        }
+    }
+}
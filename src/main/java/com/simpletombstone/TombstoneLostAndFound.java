@@ -0,0 +1,98 @@
+package com.simpletombstone;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+
+import java.util.*;
+
+/**
+ * 失物招领，保存过期墓碑中的物品
+ * 每个维度一份，与墓碑记录一起保存在 {@link TombstoneStorage} 的头文件中：墓碑过期移除和物品移入失物招领
+ * 在同一次写盘中生效，崩溃时不会出现两边各保存了一半的情况。
+ * 每批物品以来源墓碑的位置和创建时间为键，回放日志时重复的添加和领取都是幂等的
+ * <p>
+ * 物品保持原始 NBT，玩家领取时才解码
+ */
+public class TombstoneLostAndFound {
+    private static final String KEY_PLAYER_ID = "PlayerId";
+    private static final String KEY_POS = "Pos";
+    private static final String KEY_CREATED_TICK = "CreatedTick";
+    private static final String KEY_ITEMS = "Items";
+
+    /**
+     * 一个过期墓碑移入的物品
+     * @param pos 来源墓碑的位置
+     * @param createdTick 来源墓碑的创建时间
+     */
+    public record Batch(long pos, long createdTick, NbtList items) {
+    }
+
+    private final Map<UUID, List<Batch>> batches = new HashMap<>();
+
+    /**
+     * 添加一批物品，同一来源墓碑的物品已经存在时忽略
+     * @return 是否添加
+     */
+    public boolean add(UUID playerId, long pos, long createdTick, NbtList items) {
+        if (items.isEmpty()) return false;
+        List<Batch> list = batches.computeIfAbsent(playerId, k -> new ArrayList<>(1));
+        for (Batch batch : list) {
+            if (batch.pos() == pos && batch.createdTick() == createdTick) return false;
+        }
+        list.add(new Batch(pos, createdTick, items));
+        return true;
+    }
+
+    /**
+     * 取出玩家的全部物品
+     * @return 取出的物品，没有物品时返回空列表
+     */
+    public List<Batch> take(UUID playerId) {
+        List<Batch> list = batches.remove(playerId);
+        return list == null ? List.of() : list;
+    }
+
+    /**
+     * 移除玩家指定来源的物品，回放领取记录时调用
+     */
+    public void remove(UUID playerId, long[] positions, long[] createdTicks) {
+        List<Batch> list = batches.get(playerId);
+        if (list == null) return;
+        for (int i = 0; i < positions.length; i++) {
+            long pos = positions[i];
+            long createdTick = createdTicks[i];
+            list.removeIf(batch -> batch.pos() == pos && batch.createdTick() == createdTick);
+        }
+        if (list.isEmpty()) {
+            batches.remove(playerId);
+        }
+    }
+
+    public boolean isEmpty() {
+        return batches.isEmpty();
+    }
+
+    public NbtList writeNbt() {
+        NbtList list = new NbtList();
+        for (Map.Entry<UUID, List<Batch>> entry : batches.entrySet()) {
+            for (Batch batch : entry.getValue()) {
+                NbtCompound batchTag = new NbtCompound();
+                batchTag.putUuid(KEY_PLAYER_ID, entry.getKey());
+                batchTag.putLong(KEY_POS, batch.pos());
+                batchTag.putLong(KEY_CREATED_TICK, batch.createdTick());
+                batchTag.put(KEY_ITEMS, batch.items());
+                list.add(batchTag);
+            }
+        }
+        return list;
+    }
+
+    public void readNbt(NbtList list) {
+        for (NbtElement element : list) {
+            NbtCompound batchTag = (NbtCompound) element;
+            add(batchTag.getUuid(KEY_PLAYER_ID), batchTag.getLong(KEY_POS), batchTag.getLong(KEY_CREATED_TICK),
+                    TombstoneItems.intern(batchTag.getList(KEY_ITEMS, NbtElement.COMPOUND_TYPE)));
+        }
+    }
+}
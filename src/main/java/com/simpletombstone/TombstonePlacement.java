@@ -0,0 +1,174 @@
+package com.simpletombstone;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.FluidBlock;
+import net.minecraft.fluid.FluidState;
+import net.minecraft.registry.tag.FluidTags;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+
+/**
+ * 计算墓碑的放置位置
+ * 只在死亡位置所在的一列方块中查找：空中下落时先用 WORLD_SURFACE 高度图直接定位地表，
+ * 洞穴中逐格下落时整段跳过全是空气的区段，液体中上浮时逐格检查，
+ * 总检查次数不超过 {@link #MAX_PROBES}，超出时退回到死亡位置并垫上玻璃
+ */
+public final class TombstonePlacement {
+    // 单次放置最多检查的方块数
+    public static final int MAX_PROBES = 256;
+    // 末地虚空死亡且该列没有地面时，墓碑放在世界底部以上的高度
+    public static final int END_VOID_HEIGHT = 60;
+
+    /**
+     * @param tombstonePos 放置花盆的位置
+     * @param needsGlassBase 花盆下方是否需要放置玻璃
+     */
+    public record Result(BlockPos tombstonePos, boolean needsGlassBase) {
+        public BlockPos basePos() {
+            return tombstonePos.down();
+        }
+    }
+
+    private TombstonePlacement() {
+    }
+
+    public static Result solve(World world, BlockPos deathPos) {
+        Column column = new Column(world, deathPos);
+        int bottom = world.getBottomY();
+        int top = world.getTopY();
+        int y = deathPos.getY();
+
+        boolean deadInVoid = y <= bottom;
+        if (deadInVoid) {
+            y = bottom + 1;
+        }
+
+        // 当前列中最高的非空气方块之上的第一个空气位置
+        int surface = world.getTopY(Heightmap.Type.WORLD_SURFACE, deathPos.getX(), deathPos.getZ());
+
+        if (deadInVoid && world.getRegistryKey() == World.END) {
+            // 末地虚空：该列有地面时落在地面上，否则悬浮在固定高度
+            y = surface > bottom ? surface : bottom + END_VOID_HEIGHT;
+        } else if (!deadInVoid) {
+            if (y >= surface) {
+                // 地表以上全是空气，直接落到地表
+                y = Math.max(surface, bottom + 1);
+            } else {
+                y = column.fall(y, bottom);
+                if (y == Integer.MIN_VALUE) return fallback(world, deathPos);
+            }
+        }
+
+        if (y >= top) {
+            y = top - 1;
+        }
+
+        BlockState atPos = column.state(y);
+        FluidState fluid = atPos.getFluidState();
+        if (fluid.isIn(FluidTags.WATER)) {
+            y = column.rise(y, top, true);
+            if (y == Integer.MIN_VALUE) return fallback(world, deathPos);
+            BlockPos basePos = new BlockPos(deathPos.getX(), y - 1, deathPos.getZ());
+            BlockState below = column.state(y - 1);
+            boolean glass = below.getFluidState().isIn(FluidTags.WATER) || !below.isSolidBlock(world, basePos);
+            return new Result(basePos.up(), glass);
+        }
+        if (fluid.isIn(FluidTags.LAVA)) {
+            y = column.rise(y, top, false);
+            if (y == Integer.MIN_VALUE) return fallback(world, deathPos);
+            BlockPos basePos = new BlockPos(deathPos.getX(), y - 1, deathPos.getZ());
+            return new Result(basePos.up(), !column.state(y - 1).isSolidBlock(world, basePos));
+        }
+
+        BlockPos basePos = new BlockPos(deathPos.getX(), y - 1, deathPos.getZ());
+        BlockState baseState = column.state(y - 1);
+        boolean glass = baseState.getBlock() instanceof FluidBlock
+                || !baseState.isFullCube(world, basePos)
+                || !baseState.isSolidBlock(world, basePos);
+        return new Result(basePos.up(), glass);
+    }
+
+    /**
+     * 检查次数用尽时的退路：死亡位置限制在世界高度范围内，下方是空气、液体或不完整的方块时才垫玻璃，
+     * 不会覆盖玩家放置的实心方块
+     */
+    private static Result fallback(World world, BlockPos deathPos) {
+        int y = Math.max(world.getBottomY() + 1, Math.min(deathPos.getY(), world.getTopY() - 1));
+        SimpleTombstone.LOGGER.warn("[SimpleTombstone] 在 {} 附近未能找到合适的墓碑位置，使用死亡位置", deathPos.toShortString());
+        BlockPos tombstonePos = new BlockPos(deathPos.getX(), y, deathPos.getZ());
+        BlockPos basePos = tombstonePos.down();
+        BlockState baseState = world.getBlockState(basePos);
+        boolean glass = baseState.isAir()
+                || !baseState.getFluidState().isEmpty()
+                || !baseState.isSolidBlock(world, basePos);
+        return new Result(tombstonePos, glass);
+    }
+
+    /**
+     * 死亡位置所在的一列方块，直接读取区块中的区段，并统计检查次数
+     */
+    private static final class Column {
+        private final WorldChunk chunk;
+        private final int localX;
+        private final int localZ;
+        private final int bottom;
+        private final int top;
+        private int probes;
+
+        Column(World world, BlockPos pos) {
+            this.chunk = world.getWorldChunk(pos);
+            this.localX = pos.getX() & 15;
+            this.localZ = pos.getZ() & 15;
+            this.bottom = world.getBottomY();
+            this.top = world.getTopY();
+        }
+
+        private ChunkSection section(int y) {
+            return chunk.getSection(chunk.getSectionIndex(y));
+        }
+
+        BlockState state(int y) {
+            if (y < bottom || y >= top) return Blocks.AIR.getDefaultState();
+            probes++;
+            return section(y).getBlockState(localX, y & 15, localZ);
+        }
+
+        /**
+         * 从 y 开始向下穿过空气，遇到全是空气的区段时整段跳过
+         * @return 落地位置，检查次数用尽时返回 Integer.MIN_VALUE
+         */
+        int fall(int y, int worldBottom) {
+            while (y - 1 > worldBottom) {
+                if (probes >= MAX_PROBES) return Integer.MIN_VALUE;
+                int below = y - 1;
+                if (section(below).isEmpty()) {
+                    probes++;
+                    y = Math.max(below & ~15, worldBottom + 1);
+                    continue;
+                }
+                if (!state(below).isAir()) break;
+                y = below;
+            }
+            return y;
+        }
+
+        /**
+         * 从 y 开始向上穿过水或岩浆，遇到全是空气的区段时立即停止
+         * @return 液面以上的第一个位置，检查次数用尽时返回 Integer.MIN_VALUE
+         */
+        int rise(int y, int worldTop, boolean water) {
+            while (y < worldTop) {
+                if (probes >= MAX_PROBES) return Integer.MIN_VALUE;
+                if (section(y).isEmpty()) break;
+                BlockState state = state(y);
+                if (!state.getFluidState().isIn(water ? FluidTags.WATER : FluidTags.LAVA)) break;
+                y++;
+            }
+            return Math.min(y, worldTop - 1);
+        }
+    }
+}
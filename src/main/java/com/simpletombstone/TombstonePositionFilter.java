@@ -0,0 +1,60 @@
+package com.simpletombstone;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.world.World;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 单个维度内所有墓碑位置的集合，用于在右键方块时快速排除不是墓碑的位置
+ * 包含未读取分片中的墓碑，由 {@link TombstoneStorage} 在增删墓碑记录时维护，
+ * 查询时不需要经过 PersistentStateManager。只能在服务器线程访问
+ */
+public final class TombstonePositionFilter {
+    private static final Map<RegistryKey<World>, TombstonePositionFilter> FILTERS = new IdentityHashMap<>();
+
+    // 位置 long -> 该位置上的墓碑记录数
+    private final Long2IntOpenHashMap counts = new Long2IntOpenHashMap();
+
+    private TombstonePositionFilter() {
+    }
+
+    /**
+     * 获取维度的过滤器，存储在创建时获取一次并在之后直接更新
+     */
+    public static TombstonePositionFilter forDimension(RegistryKey<World> dimension) {
+        return FILTERS.computeIfAbsent(dimension, k -> new TombstonePositionFilter());
+    }
+
+    /**
+     * 位置上是否可能有墓碑，维度的存储尚未加载时返回 false
+     */
+    public static boolean contains(RegistryKey<World> dimension, long pos) {
+        TombstonePositionFilter filter = FILTERS.get(dimension);
+        return filter != null && filter.counts.containsKey(pos);
+    }
+
+    public boolean containsPos(long pos) {
+        return counts.containsKey(pos);
+    }
+
+    void add(long pos) {
+        counts.addTo(pos, 1);
+    }
+
+    void remove(long pos) {
+        if (counts.addTo(pos, -1) <= 1) {
+            counts.remove(pos);
+        }
+    }
+
+    void clear() {
+        counts.clear();
+    }
+
+    public int size() {
+        return counts.size();
+    }
+}
@@ -0,0 +1,112 @@
+package com.simpletombstone;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectRBTreeSet;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * 供管理命令查询的墓碑记录索引，与玩家墓碑索引一起由 {@link TombstoneStorage} 维护
+ * 按区块和按创建时间分别建立索引，查询结果以惰性 Stream 返回，分页时只遍历到所需的那一页，
+ * 不会复制整个结果集。返回的 Stream 必须在服务器线程中立即消费，不能跨 tick 保存
+ */
+public class TombstoneQueryIndex {
+    /**
+     * 一页查询结果
+     * @param page 页码，从 0 开始
+     * @param hasMore 之后是否还有结果
+     */
+    public record Page<T>(List<T> items, int page, boolean hasMore) {
+    }
+
+    private static final Comparator<TombstoneStorage.TombstoneEntry> BY_AGE =
+            Comparator.comparingLong(TombstoneStorage.TombstoneEntry::createdTick)
+                    .thenComparingLong(entry -> entry.pos().asLong())
+                    .thenComparing(TombstoneStorage.TombstoneEntry::playerId);
+
+    // 区块 long -> 区块内的墓碑记录
+    private final Long2ObjectOpenHashMap<ObjectArrayList<TombstoneStorage.TombstoneEntry>> byChunk = new Long2ObjectOpenHashMap<>();
+    // 按创建时间从旧到新排列的墓碑记录
+    private final ObjectRBTreeSet<TombstoneStorage.TombstoneEntry> byAge = new ObjectRBTreeSet<>(BY_AGE);
+
+    void add(TombstoneStorage.TombstoneEntry entry) {
+        byChunk.computeIfAbsent(chunkKey(entry.pos()), k -> new ObjectArrayList<>(2)).add(entry);
+        byAge.add(entry);
+    }
+
+    void remove(TombstoneStorage.TombstoneEntry entry) {
+        long chunk = chunkKey(entry.pos());
+        ObjectArrayList<TombstoneStorage.TombstoneEntry> entries = byChunk.get(chunk);
+        if (entries != null && entries.remove(entry) && entries.isEmpty()) {
+            byChunk.remove(chunk);
+        }
+        byAge.remove(entry);
+    }
+
+    void clear() {
+        byChunk.clear();
+        byAge.clear();
+    }
+
+    /**
+     * 范围内的墓碑记录，顺序不固定
+     * 范围覆盖的区块数少于有墓碑的区块数时逐个查找范围内的区块，否则遍历有墓碑的区块
+     */
+    public Stream<TombstoneStorage.TombstoneEntry> inBox(BlockBox box) {
+        int minX = ChunkSectionPos.getSectionCoord(box.getMinX());
+        int maxX = ChunkSectionPos.getSectionCoord(box.getMaxX());
+        int minZ = ChunkSectionPos.getSectionCoord(box.getMinZ());
+        int maxZ = ChunkSectionPos.getSectionCoord(box.getMaxZ());
+        long width = (long) maxX - minX + 1;
+        long area = width * ((long) maxZ - minZ + 1);
+
+        Stream<ObjectArrayList<TombstoneStorage.TombstoneEntry>> chunks;
+        if (area <= byChunk.size()) {
+            chunks = LongStream.range(0, area)
+                    .mapToObj(i -> byChunk.get(ChunkPos.toLong((int) (minX + i % width), (int) (minZ + i / width))))
+                    .filter(Objects::nonNull);
+        } else {
+            chunks = byChunk.values().stream();
+        }
+        return chunks.flatMap(List::stream).filter(entry -> box.contains(entry.pos()));
+    }
+
+    /**
+     * 以 center 为中心、半径 radius（欧氏距离）内的墓碑记录，顺序不固定
+     */
+    public Stream<TombstoneStorage.TombstoneEntry> inRadius(BlockPos center, int radius) {
+        double maxDistance = (double) radius * radius;
+        BlockBox box = new BlockBox(center.getX() - radius, center.getY() - radius, center.getZ() - radius,
+                center.getX() + radius, center.getY() + radius, center.getZ() + radius);
+        return inBox(box).filter(entry -> entry.pos().getSquaredDistance(center) <= maxDistance);
+    }
+
+    /**
+     * 创建时间不晚于 createdBefore 的墓碑记录，从旧到新排列
+     */
+    public Stream<TombstoneStorage.TombstoneEntry> createdBefore(long createdBefore) {
+        return byAge.stream().takeWhile(entry -> entry.createdTick() <= createdBefore);
+    }
+
+    /**
+     * 取出第 page 页的结果，只消费到该页之后的一条记录
+     */
+    public static <T> Page<T> page(Stream<T> results, int page, int pageSize) {
+        List<T> items = results.skip((long) page * pageSize).limit(pageSize + 1L).toList();
+        boolean hasMore = items.size() > pageSize;
+        return new Page<>(hasMore ? items.subList(0, pageSize) : items, page, hasMore);
+    }
+
+    private static long chunkKey(BlockPos pos) {
+        return ChunkPos.toLong(ChunkSectionPos.getSectionCoord(pos.getX()), ChunkSectionPos.getSectionCoord(pos.getZ()));
+    }
+}
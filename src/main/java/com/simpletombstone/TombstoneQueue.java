@@ -0,0 +1,117 @@
+package com.simpletombstone;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 延迟放置的墓碑队列
+ * 玩家死亡时立即取走物品并入队，方块放置和存储写入在之后的 tick 中按预算逐个完成，
+ * 避免大量玩家同时死亡时所有工作都挤在同一个 tick 中
+ * <p>
+ * 队列本身不保存：入队时取走的物品同时写入死亡维度的 {@link TombstoneJournal}，
+ * 排队期间崩溃时，重启后回放日志把这些墓碑重新入队；关闭日志时排队中的物品不受崩溃保护
+ */
+public class TombstoneQueue {
+    /**
+     * 已取走物品但尚未放置的墓碑
+     * @param slots 与物品一一对应的原背包槽位
+     * @param capturedNanos 入队时间，用于统计排队延迟
+     */
+    public record Pending(UUID playerId, RegistryKey<World> dimension, BlockPos deathPos,
+                          List<ItemStack> items, byte[] slots, long capturedTick, long capturedNanos) {
+    }
+
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private long lastLatencyNanos;
+    private long maxLatencyNanos;
+
+    public void enqueue(Pending pending) {
+        queue.addLast(pending);
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public int depth() {
+        return queue.size();
+    }
+
+    public long getLastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    /**
+     * 按先入先出的顺序放置墓碑，直到用完数量或时间预算，每个 tick 至少放置一个
+     */
+    public void drain(int maxPlacements, long budgetNanos, Consumer<Pending> placer) {
+        if (queue.isEmpty()) return;
+        long start = System.nanoTime();
+        int placed = 0;
+        while (!queue.isEmpty()) {
+            if (placed > 0 && (placed >= maxPlacements || System.nanoTime() - start >= budgetNanos)) break;
+            place(queue.pollFirst(), placer);
+            placed++;
+        }
+        if (SimpleTombstone.LOGGER.isDebugEnabled()) {
+            SimpleTombstone.LOGGER.debug("[SimpleTombstone] 本 tick 放置了 {} 个墓碑，队列剩余 {}，最近排队延迟 {} μs",
+                    placed, queue.size(), lastLatencyNanos / 1000);
+        }
+    }
+
+    /**
+     * 立即放置所有排队的墓碑，服务器关闭前调用
+     */
+    public void drainAll(Consumer<Pending> placer) {
+        while (!queue.isEmpty()) {
+            place(queue.pollFirst(), placer);
+        }
+    }
+
+    private void place(Pending pending, Consumer<Pending> placer) {
+        placer.accept(pending);
+        lastLatencyNanos = System.nanoTime() - pending.capturedNanos();
+        maxLatencyNanos = Math.max(maxLatencyNanos, lastLatencyNanos);
+    }
+
+    /**
+     * 按入队顺序遍历指定维度中尚未放置的墓碑
+     */
+    public void forEach(RegistryKey<World> dimension, Consumer<Pending> consumer) {
+        for (Pending pending : queue) {
+            if (pending.dimension() == dimension) {
+                consumer.accept(pending);
+            }
+        }
+    }
+
+    /**
+     * 取出玩家在指定范围内尚未放置的墓碑，供靠近领取直接归还物品
+     */
+    public List<Pending> takeNearby(UUID playerId, RegistryKey<World> dimension, BlockPos center, int radius) {
+        if (queue.isEmpty()) return List.of();
+        List<Pending> result = null;
+        Iterator<Pending> it = queue.iterator();
+        while (it.hasNext()) {
+            Pending pending = it.next();
+            if (pending.playerId().equals(playerId) && pending.dimension() == dimension
+                    && Math.abs(pending.deathPos().getX() - center.getX()) <= radius
+                    && Math.abs(pending.deathPos().getY() - center.getY()) <= radius
+                    && Math.abs(pending.deathPos().getZ() - center.getZ()) <= radius) {
+                if (result == null) result = new ArrayList<>(1);
+                result.add(pending);
+                it.remove();
+            }
+        }
+        return result == null ? List.of() : result;
+    }
+}
@@ -0,0 +1,134 @@
+package com.simpletombstone;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.world.PersistentState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 在后台线程中编码并压缩墓碑存档
+ * 主线程只负责生成快照，NBT 编码、压缩和写盘都在单独的 IO 线程中完成，
+ * 写入先落到临时文件再原子替换，避免崩溃时留下半个文件。
+ * 关闭异步保存时由 {@link #saveSync} 在主线程中以同样的方式写入，两种方式的失败都计入 {@link #getFailureCount()}
+ */
+public final class TombstoneSaver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TombstoneSaver.class);
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "SimpleTombstone-IO");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 单线程执行，等待最后一次提交的任务即可保证之前的任务都已完成
+    private static volatile CompletableFuture<Void> lastSave = CompletableFuture.completedFuture(null);
+
+    // 写入失败的累计次数，IO 线程和主线程（同步保存）都会递增
+    private static final AtomicLong FAILURE_COUNT = new AtomicLong();
+
+    // 最近一次保存的快照耗时和编码写盘耗时（纳秒）
+    private static volatile long lastSnapshotNanos;
+    private static volatile long lastEncodeNanos;
+
+    private TombstoneSaver() {
+    }
+
+    /**
+     * 提交一次异步保存
+     * @param snapshotNanos 主线程生成快照的耗时
+     * @param encoder 在 IO 线程中执行，返回完整的存档 NBT
+     * @param onFailure 写入失败时在 IO 线程中调用，只能记录失败（如设置原子标记），由主线程在下次保存时处理
+     */
+    public static void saveAsync(File file, long snapshotNanos, Supplier<NbtCompound> encoder, Runnable onFailure) {
+        lastSnapshotNanos = snapshotNanos;
+        lastSave = CompletableFuture.runAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                writeAtomically(encoder.get(), file.toPath());
+            } catch (Exception e) {
+                LOGGER.error("异步保存墓碑数据时发生错误: {}", file, e);
+                FAILURE_COUNT.incrementAndGet();
+                onFailure.run();
+                return;
+            }
+            lastEncodeNanos = System.nanoTime() - start;
+            TombstoneStats.record(TombstoneStats.Metric.SAVE_IO, start);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("[TombstoneSaver] 保存 {} 完成，快照 {} μs，编码写盘 {} μs",
+                        file.getName(), lastSnapshotNanos / 1000, lastEncodeNanos / 1000);
+            }
+        }, EXECUTOR);
+    }
+
+    /**
+     * 在当前线程中立即写入，与 {@link PersistentState#save} 不同，失败时会计入失败次数
+     * @return 是否写入成功，失败时调用方应保持脏标记
+     */
+    public static boolean saveSync(File file, NbtCompound root) {
+        try {
+            writeAtomically(root, file.toPath());
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("保存墓碑数据时发生错误: {}", file, e);
+            FAILURE_COUNT.incrementAndGet();
+            return false;
+        }
+    }
+
+    private static void writeAtomically(NbtCompound nbt, Path target) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            NbtIo.writeCompressed(nbt, out);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 在所有已提交的保存完成后于 IO 线程中执行任务
+     */
+    public static void runAfterPendingSaves(Runnable task) {
+        lastSave = lastSave.thenRunAsync(task, EXECUTOR);
+    }
+
+    /**
+     * 等待所有已提交的保存完成，服务器关闭时调用
+     */
+    public static void awaitPendingSaves() {
+        try {
+            lastSave.get(30, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.error("等待墓碑数据保存超时");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.error("等待墓碑数据保存时发生错误", e);
+        }
+    }
+
+    public static long getFailureCount() {
+        return FAILURE_COUNT.get();
+    }
+
+    public static long getLastSnapshotNanos() {
+        return lastSnapshotNanos;
+    }
+
+    public static long getLastEncodeNanos() {
+        return lastEncodeNanos;
+    }
+}
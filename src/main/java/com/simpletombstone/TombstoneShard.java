@@ -0,0 +1,217 @@
+package com.simpletombstone;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.nbt.*;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.PersistentState;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 一个区域（32x32 区块）内墓碑物品的持久化分片
+ * 每个分片有独立的脏标记和文件，保存时只会重写发生变化的分片
+ * 分片本身只记录所含的墓碑位置，墓碑数据保存在 {@link TombstoneStorage} 的索引中
+ */
+public class TombstoneShard extends PersistentState {
+    private static final String KEY_TOMBSTONES = "Tombstones";
+    private static final String KEY_POS = "Pos";
+    private static final String KEY_PLAYER_ID = "PlayerId";
+    private static final String KEY_CREATED_TICK = "CreatedTick";
+    private static final String KEY_PALETTE = "Palette";
+    private static final String KEY_ITEM_REFS = "ItemRefs";
+    private static final String KEY_SLOTS = "Slots";
+
+    // 区域边长为 32 个区块，即 512 个方块
+    private static final int REGION_SHIFT = 9;
+    private static final String FILE_PREFIX = "simple_tombstone_r.";
+
+    private final TombstoneIndex index;
+    private final Supplier<TombstoneConfig> config;
+    private final LongOpenHashSet positions = new LongOpenHashSet();
+    // 后台写入失败，由 IO 线程设置；脏标记只在主线程中读写
+    private final AtomicBoolean saveFailed = new AtomicBoolean();
+
+    public TombstoneShard(TombstoneIndex index, Supplier<TombstoneConfig> config) {
+        this.index = index;
+        this.config = config;
+    }
+
+    public static long regionKey(BlockPos pos) {
+        return regionKey(pos.getX() >> REGION_SHIFT, pos.getZ() >> REGION_SHIFT);
+    }
+
+    private static long regionKey(int regionX, int regionZ) {
+        return ((long) regionX << 32) | (regionZ & 0xFFFFFFFFL);
+    }
+
+    public static String fileId(long regionKey) {
+        return FILE_PREFIX + (int) (regionKey >> 32) + "." + (int) regionKey;
+    }
+
+    /**
+     * 是否为分片的存档文件名（不含保存时的临时文件）
+     */
+    public static boolean isShardFile(String fileName) {
+        return fileName.startsWith(FILE_PREFIX) && fileName.endsWith(".dat");
+    }
+
+    public void track(BlockPos pos) {
+        positions.add(pos.asLong());
+        markDirty();
+    }
+
+    /**
+     * 位置上已没有墓碑数据时停止记录该位置
+     */
+    public void untrack(BlockPos pos) {
+        if (index.get(pos) == null) {
+            positions.remove(pos.asLong());
+        }
+        markDirty();
+    }
+
+    public boolean isEmpty() {
+        return positions.isEmpty();
+    }
+
+    /**
+     * 存档快照中的一条墓碑，直接引用不可变的墓碑数据
+     */
+    private record SnapshotEntry(BlockPos pos, SimpleTombstone.PlayerTombstoneData data) {
+    }
+
+    /**
+     * 在主线程生成存档快照，只复制引用，不编码物品
+     */
+    private List<SnapshotEntry> snapshot() {
+        List<SnapshotEntry> snapshot = new ArrayList<>(positions.size());
+        LongIterator it = positions.iterator();
+        while (it.hasNext()) {
+            BlockPos pos = BlockPos.fromLong(it.nextLong());
+            List<SimpleTombstone.PlayerTombstoneData> list = index.get(pos);
+            if (list == null) continue;
+            for (SimpleTombstone.PlayerTombstoneData data : list) {
+                snapshot.add(new SnapshotEntry(pos, data));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 分片中所有不同的物品 NBT 只写入一次调色板，每个墓碑只记录物品在调色板中的下标
+     * 物品 NBT 已经驻留为共享实例，按引用去重即可
+     */
+    private static NbtCompound encode(List<SnapshotEntry> snapshot, NbtCompound nbt) {
+        NbtList palette = new NbtList();
+        Reference2IntOpenHashMap<NbtElement> paletteIndex = new Reference2IntOpenHashMap<>();
+        paletteIndex.defaultReturnValue(-1);
+
+        NbtList tombstoneList = new NbtList();
+        for (SnapshotEntry entry : snapshot) {
+            NbtCompound tombstoneTag = new NbtCompound();
+            tombstoneTag.put(KEY_POS, NbtHelper.fromBlockPos(entry.pos()));
+            tombstoneTag.putUuid(KEY_PLAYER_ID, entry.data().playerId());
+            tombstoneTag.putLong(KEY_CREATED_TICK, entry.data().createdTick());
+
+            // 未解码的墓碑直接使用原始物品 NBT
+            NbtList items = entry.data().writeItems();
+            int[] refs = new int[items.size()];
+            for (int i = 0; i < refs.length; i++) {
+                NbtElement item = items.get(i);
+                int ref = paletteIndex.getInt(item);
+                if (ref < 0) {
+                    ref = palette.size();
+                    palette.add(item);
+                    paletteIndex.put(item, ref);
+                }
+                refs[i] = ref;
+            }
+            tombstoneTag.putIntArray(KEY_ITEM_REFS, refs);
+            byte[] slots = entry.data().slots();
+            if (slots != null) {
+                tombstoneTag.putByteArray(KEY_SLOTS, slots);
+            }
+
+            tombstoneList.add(tombstoneTag);
+        }
+        nbt.put(KEY_PALETTE, palette);
+        nbt.put(KEY_TOMBSTONES, tombstoneList);
+        return nbt;
+    }
+
+    @Override
+    public NbtCompound writeNbt(NbtCompound nbt) {
+        return encode(snapshot(), nbt);
+    }
+
+    @Override
+    public boolean isDirty() {
+        return super.isDirty() || saveFailed.get();
+    }
+
+    /**
+     * 开启异步保存时，主线程只生成快照，编码和写盘交给 {@link TombstoneSaver}
+     * 关闭时在主线程中写入，失败时保持脏标记并计入失败次数，不会删除尚未覆盖的日志
+     */
+    @Override
+    public void save(File file) {
+        if (!isDirty()) return;
+        if (!config.get().asyncSave()) {
+            NbtCompound root = new NbtCompound();
+            root.put("data", writeNbt(new NbtCompound()));
+            NbtHelper.putDataVersion(root);
+            if (TombstoneSaver.saveSync(file, root)) {
+                setDirty(false);
+                saveFailed.set(false);
+            }
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<SnapshotEntry> snapshot = snapshot();
+        long snapshotNanos = System.nanoTime() - start;
+        setDirty(false);
+        saveFailed.set(false);
+
+        TombstoneSaver.saveAsync(file, snapshotNanos, () -> {
+            NbtCompound root = new NbtCompound();
+            root.put("data", encode(snapshot, new NbtCompound()));
+            NbtHelper.putDataVersion(root);
+            return root;
+        }, () -> saveFailed.set(true));
+    }
+
+    /**
+     * 读取分片并把其中的墓碑数据登记到索引中，物品保持原始 NBT，不做解码
+     */
+    public static TombstoneShard fromNbt(NbtCompound nbt, TombstoneIndex index, Supplier<TombstoneConfig> config) {
+        long start = System.nanoTime();
+        TombstoneShard shard = new TombstoneShard(index, config);
+        NbtList palette = TombstoneItems.intern(nbt.getList(KEY_PALETTE, NbtElement.COMPOUND_TYPE));
+        NbtList tombstoneList = nbt.getList(KEY_TOMBSTONES, NbtElement.COMPOUND_TYPE);
+
+        for (NbtElement element : tombstoneList) {
+            NbtCompound tombstoneTag = (NbtCompound) element;
+            BlockPos pos = NbtHelper.toBlockPos(tombstoneTag.getCompound(KEY_POS));
+            UUID playerId = tombstoneTag.getUuid(KEY_PLAYER_ID);
+            long createdTick = tombstoneTag.getLong(KEY_CREATED_TICK);
+            NbtList itemList = new NbtList();
+            for (int ref : tombstoneTag.getIntArray(KEY_ITEM_REFS)) {
+                itemList.add(palette.get(ref));
+            }
+
+            // 没有槽位的墓碑（从单文件存档迁移而来）读到空数组，与物品数量不符时按没有槽位处理
+            byte[] slots = tombstoneTag.getByteArray(KEY_SLOTS);
+            index.getOrCreate(pos).add(SimpleTombstone.PlayerTombstoneData.fromNbt(playerId, itemList, slots, createdTick));
+            shard.positions.add(pos.asLong());
+        }
+
+        TombstoneStats.record(TombstoneStats.Metric.LOAD, start);
+        return shard;
+    }
+}
@@ -0,0 +1,211 @@
+package com.simpletombstone;
+
+import jdk.jfr.*;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.world.World;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 模组自身的运行统计，供 /tombstone stats 查看，同时以 JFR 事件的形式输出
+ * 每种操作记录次数、总耗时、最大耗时和按 2 的幂分桶的耗时直方图，
+ * 记录时只更新预先分配好的原子数组，不产生任何对象；JFR 未开启对应事件时也不会创建事件对象
+ */
+public final class TombstoneStats {
+    /**
+     * 需要统计耗时的操作
+     */
+    public enum Metric {
+        CREATE("墓碑创建"),
+        PROXIMITY_CHECK("靠近检测"),
+        RIGHT_CLICK("右键领取"),
+        SAVE("存档快照"),
+        SAVE_IO("存档写盘"),
+        LOAD("存档读取");
+
+        private final String label;
+
+        Metric(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    /**
+     * 只统计次数的事件
+     */
+    public enum Counter {
+        RECOVERED_PROXIMITY("靠近领取"),
+        RECOVERED_RIGHT_CLICK("右键领取"),
+        RECOVERED_QUEUED("排队中直接归还"),
+        EVICTED("超出上限被淘汰"),
+        EXPIRED("过期");
+
+        private final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    // 第 i 个桶统计耗时在 [2^(i-1), 2^i) 纳秒之间的操作，第 0 个桶为 0 纳秒
+    public static final int BUCKETS = 64;
+
+    private static final Metric[] METRICS = Metric.values();
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final AtomicLongArray COUNTS = new AtomicLongArray(METRICS.length);
+    private static final AtomicLongArray TOTAL_NANOS = new AtomicLongArray(METRICS.length);
+    private static final AtomicLongArray MAX_NANOS = new AtomicLongArray(METRICS.length);
+    private static final AtomicLongArray HISTOGRAM = new AtomicLongArray(METRICS.length * BUCKETS);
+    private static final AtomicLongArray COUNTER_VALUES = new AtomicLongArray(COUNTERS.length);
+    // 维度 -> 墓碑记录数，由各维度的存储在增删记录时更新
+    private static final Map<RegistryKey<World>, AtomicInteger> INDEX_SIZES = new ConcurrentHashMap<>();
+
+    private static final EventType OPERATION_EVENT = EventType.getEventType(OperationEvent.class);
+
+    static {
+        FlightRecorder.addPeriodicEvent(IndexSizeEvent.class, TombstoneStats::emitIndexSizes);
+    }
+
+    private TombstoneStats() {
+    }
+
+    /**
+     * 记录一次操作的耗时
+     * @param startNanos 操作开始时的 {@link System#nanoTime()}
+     */
+    public static void record(Metric metric, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        int m = metric.ordinal();
+        COUNTS.incrementAndGet(m);
+        TOTAL_NANOS.addAndGet(m, nanos);
+        long max;
+        while (nanos > (max = MAX_NANOS.get(m)) && !MAX_NANOS.compareAndSet(m, max, nanos)) {
+            // 其他线程同时更新了最大值，重新比较
+        }
+        HISTOGRAM.incrementAndGet(m * BUCKETS + bucket(nanos));
+
+        if (OPERATION_EVENT.isEnabled()) {
+            OperationEvent event = new OperationEvent();
+            event.operation = metric.label;
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+
+    public static void increment(Counter counter) {
+        COUNTER_VALUES.incrementAndGet(counter.ordinal());
+    }
+
+    /**
+     * 获取维度的墓碑记录数计数器，存储在创建时获取一次并在之后直接更新
+     */
+    public static AtomicInteger indexSize(RegistryKey<World> dimension) {
+        return INDEX_SIZES.computeIfAbsent(dimension, k -> new AtomicInteger());
+    }
+
+    private static int bucket(long nanos) {
+        return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    public static long count(Metric metric) {
+        return COUNTS.get(metric.ordinal());
+    }
+
+    public static long totalNanos(Metric metric) {
+        return TOTAL_NANOS.get(metric.ordinal());
+    }
+
+    public static long maxNanos(Metric metric) {
+        return MAX_NANOS.get(metric.ordinal());
+    }
+
+    /**
+     * 根据直方图估算百分位耗时，返回所在桶的上界
+     * @param percentile 0 到 1 之间
+     */
+    public static long percentileNanos(Metric metric, double percentile) {
+        long total = count(metric);
+        if (total == 0) return 0;
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        int base = metric.ordinal() * BUCKETS;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += HISTOGRAM.get(base + i);
+            if (seen >= target) return i == 0 ? 0 : 1L << Math.min(i, 62);
+        }
+        return maxNanos(metric);
+    }
+
+    public static long get(Counter counter) {
+        return COUNTER_VALUES.get(counter.ordinal());
+    }
+
+    public static Map<RegistryKey<World>, AtomicInteger> indexSizes() {
+        return INDEX_SIZES;
+    }
+
+    /**
+     * 清空所有统计，维度的墓碑记录数不受影响
+     */
+    public static void reset() {
+        for (int i = 0; i < METRICS.length; i++) {
+            COUNTS.set(i, 0);
+            TOTAL_NANOS.set(i, 0);
+            MAX_NANOS.set(i, 0);
+        }
+        for (int i = 0; i < HISTOGRAM.length(); i++) {
+            HISTOGRAM.set(i, 0);
+        }
+        for (int i = 0; i < COUNTERS.length; i++) {
+            COUNTER_VALUES.set(i, 0);
+        }
+    }
+
+    private static void emitIndexSizes() {
+        for (Map.Entry<RegistryKey<World>, AtomicInteger> entry : INDEX_SIZES.entrySet()) {
+            IndexSizeEvent event = new IndexSizeEvent();
+            event.dimension = entry.getKey().getValue().toString();
+            event.tombstones = entry.getValue().get();
+            event.commit();
+        }
+    }
+
+    @Name("com.simpletombstone.Operation")
+    @Label("Tombstone Operation")
+    @Category("SimpleTombstone")
+    @Description("墓碑模组的一次操作及其耗时")
+    @StackTrace(false)
+    static final class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Name("com.simpletombstone.IndexSize")
+    @Label("Tombstone Index Size")
+    @Category("SimpleTombstone")
+    @Description("各维度的墓碑记录数")
+    @Period("10 s")
+    @StackTrace(false)
+    static final class IndexSizeEvent extends Event {
+        @Label("Dimension")
+        String dimension;
+
+        @Label("Tombstones")
+        int tombstones;
+    }
+}
@@ -1,54 +1,328 @@
 package com.simpletombstone;
 
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.block.FlowerPotBlock;
+import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.*;
+import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.ItemScatterer;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.world.PersistentState;
+import net.minecraft.world.PersistentStateManager;
+import net.minecraft.world.World;
+import net.minecraft.world.dimension.DimensionType;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.item.ItemStack;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+/**
+ * 墓碑存储的头文件（simple_tombstone）
+ * 只保存每个墓碑的位置、玩家和创建时间，物品按区域分片保存在 {@link TombstoneShard} 中，
+ * 分片在第一次访问时才会读取。每次添加或移除墓碑都会先写入 {@link TombstoneJournal}，
+ * 崩溃后加载时回放日志，保存时分片和头文件写盘完成后再删除旧日志和已经没有墓碑的分片文件
+ * <p>
+ * 配置了过期时间时，每条记录的到期时间随头文件保存，并登记到 {@link ExpiryWheel} 中。
+ * 过期的墓碑所在区块未加载时，花盆留到区块加载后再移除。
+ * 本维度的 {@link TombstoneLostAndFound} 也保存在头文件中，与墓碑记录的移除一起写盘
+ */
 public class TombstoneStorage extends PersistentState {
     private static final String KEY_TOMBSTONES = "Tombstones";
     private static final String KEY_POS = "Pos";
     private static final String KEY_ITEMS = "Items";
     private static final String KEY_PLAYER_ID = "PlayerId";
+    private static final String KEY_CREATED_TICK = "CreatedTick";
+    private static final String KEY_EXPIRE_TICK = "ExpireTick";
+    private static final String KEY_STALE_POTS = "StalePots";
+    private static final String KEY_LOST_AND_FOUND = "LostAndFound";
     private static final Logger LOGGER = LoggerFactory.getLogger(TombstoneStorage.class);
 
-    // 更改为每个位置存储多个玩家的墓碑数据
-    private final Map<BlockPos, List<SimpleTombstone.PlayerTombstoneData>> tombstoneData = new HashMap<>();
-    private final TombstoneConfig config;
+    // 每个维度的存储实例，每个世界 tick 和每次区块加载都会用到，不必每次经由 PersistentStateManager 查找
+    private static final Map<ServerWorld, TombstoneStorage> LOADED = new IdentityHashMap<>();
+
+    // 更改为每个位置存储多个玩家的墓碑数据，只包含已读取分片中的数据
+    private final TombstoneIndex tombstoneData = new TombstoneIndex();
+    // 玩家 UUID -> 按创建顺序排列的墓碑记录，队首为最老的墓碑
+    private final Map<UUID, ArrayDeque<TombstoneEntry>> playerTombstones = new HashMap<>();
+    // 按区块和创建时间索引的墓碑记录，供管理命令查询
+    private final TombstoneQueryIndex queryIndex = new TombstoneQueryIndex();
+    // 区域 -> 该区域内的墓碑记录数
+    private final Long2IntOpenHashMap regionCounts = new Long2IntOpenHashMap();
+    // 已读取的分片
+    private final Long2ObjectOpenHashMap<TombstoneShard> loadedShards = new Long2ObjectOpenHashMap<>();
+    // 本次启动后是否已清理过没有墓碑记录的分片文件，保存失败时由 IO 线程重置，下次保存时重新清理
+    private volatile boolean orphanShardsSwept;
+    private final PersistentStateManager stateManager;
+    private TombstoneJournal journal;
+    private final RegistryKey<World> dimension;
+    // 每次使用时读取，配置重新加载后立即生效
+    private final Supplier<TombstoneConfig> config;
+    // 本维度的墓碑记录数，供 /tombstone stats 和 JFR 读取
+    private final AtomicInteger indexSize;
+    // 本维度所有墓碑位置，右键方块时用于快速排除
+    private final TombstonePositionFilter positionFilter;
+    // 墓碑到期时间轮
+    private final ExpiryWheel expiryWheel = new ExpiryWheel();
+    // 是否已为没有到期时间的记录（旧存档或未开启过期时创建）补上到期时间
+    private boolean deadlinesAssigned;
+    // 区块 -> 墓碑已过期、等待区块加载后移除的花盆位置
+    private final Long2ObjectOpenHashMap<LongArrayList> stalePots = new Long2ObjectOpenHashMap<>();
+    // 区块 -> 过期后需要掉落物品、等待区块加载的计时器，重启后会从头文件重新登记，无需保存
+    private final Long2ObjectOpenHashMap<List<ExpiryWheel.Timer>> awaitingChunk = new Long2ObjectOpenHashMap<>();
+    // 已加载、等待在下一次世界 tick 中处理的区块
+    private final LongArrayList readyChunks = new LongArrayList();
+    // 过期墓碑移入的物品
+    private final TombstoneLostAndFound lostAndFound = new TombstoneLostAndFound();
+    // 后台写入失败，由 IO 线程设置；脏标记只在主线程中读写
+    private final AtomicBoolean saveFailed = new AtomicBoolean();
+
+    public TombstoneStorage(PersistentStateManager stateManager, RegistryKey<World> dimension) {
+        this(stateManager, dimension, TombstoneConfig::get);
+    }
+
+    /**
+     * 使用固定的配置创建存储，不跟随配置重新加载
+     */
+    public TombstoneStorage(PersistentStateManager stateManager, RegistryKey<World> dimension, TombstoneConfig config) {
+        this(stateManager, dimension, () -> config);
+    }
 
-    public TombstoneStorage() {
-        this.config = TombstoneConfig.load();
+    private TombstoneStorage(PersistentStateManager stateManager, RegistryKey<World> dimension, Supplier<TombstoneConfig> config) {
+        this.stateManager = stateManager;
+        this.dimension = dimension;
+        this.config = config;
+        this.indexSize = TombstoneStats.indexSize(dimension);
+        // 同一维度重新加载存档时从零开始计数
+        this.indexSize.set(0);
+        this.positionFilter = TombstonePositionFilter.forDimension(dimension);
+        this.positionFilter.clear();
+    }
+
+    /**
+     * 玩家墓碑索引中的一条记录
+     * @param createdTick 创建（或最近一次合并）时的世界时间
+     * @param expireTick 到期时的世界时间，0 表示没有到期时间
+     */
+    public record TombstoneEntry(RegistryKey<World> dimension, UUID playerId, BlockPos pos, long createdTick, long expireTick) {
     }
 
     public static TombstoneStorage load(ServerWorld world) {
-        return world.getPersistentStateManager().getOrCreate(
+        TombstoneStorage loaded = LOADED.get(world);
+        if (loaded != null) return loaded;
+
+        PersistentStateManager stateManager = world.getPersistentStateManager();
+        RegistryKey<World> dimension = world.getRegistryKey();
+        TombstoneStorage storage = stateManager.getOrCreate(
                 new PersistentState.Type<>(
-                        TombstoneStorage::new,
-                        TombstoneStorage::fromNbt,
+                        () -> new TombstoneStorage(stateManager, dimension),
+                        nbt -> fromNbt(nbt, stateManager, dimension),
                         null
                 ),
                 "simple_tombstone"
         );
+        if (storage.journal == null) {
+            storage.openJournal(DimensionType.getSaveDirectory(dimension, world.getServer().getSavePath(WorldSavePath.ROOT)).resolve("data"));
+        }
+        LOADED.put(world, storage);
+        return storage;
+    }
+
+    /**
+     * 维度卸载时调用，之后重新加载的同名维度会重新读取存档
+     */
+    public static void unload(ServerWorld world) {
+        LOADED.remove(world);
+    }
+
+    /**
+     * 打开日志并回放上次保存之后的操作
+     * 即使关闭了日志也会回放残留的日志文件，避免丢失关闭前的数据
+     */
+    private void openJournal(Path directory) {
+        journal = new TombstoneJournal(directory);
+        // 尚未放置的墓碑，按玩家和取走物品的时间抵消
+        Map<PendingKey, TombstoneQueue.Pending> pending = new LinkedHashMap<>();
+        int replayed = journal.replay(new TombstoneJournal.Replayer() {
+            @Override
+            public void add(BlockPos pos, UUID playerId, long createdTick, NbtList items, byte[] slots) {
+                pending.remove(new PendingKey(playerId, createdTick));
+                replayAdd(pos, SimpleTombstone.PlayerTombstoneData.fromNbt(playerId, TombstoneItems.intern(items), slots, createdTick));
+            }
+
+            @Override
+            public void remove(BlockPos pos, UUID playerId) {
+                removeInternal(pos, playerId);
+            }
+
+            @Override
+            public void pending(BlockPos deathPos, UUID playerId, long capturedTick, NbtList items, byte[] slots) {
+                List<ItemStack> stacks = new ArrayList<>(items.size());
+                for (int i = 0; i < items.size(); i++) {
+                    stacks.add(ItemStack.fromNbt(items.getCompound(i)));
+                }
+                pending.put(new PendingKey(playerId, capturedTick), new TombstoneQueue.Pending(playerId, dimension, deathPos,
+                        stacks, slots != null && slots.length == stacks.size() ? slots : null, capturedTick, System.nanoTime()));
+            }
+
+            @Override
+            public void resolve(UUID playerId, long capturedTick) {
+                pending.remove(new PendingKey(playerId, capturedTick));
+            }
+
+            @Override
+            public void expire(BlockPos pos, UUID playerId, long createdTick, NbtList items) {
+                if (items != null) {
+                    lostAndFound.add(playerId, pos.asLong(), createdTick, TombstoneItems.intern(items));
+                }
+                removeInternal(pos, playerId);
+            }
+
+            @Override
+            public void claim(UUID playerId, long[] positions, long[] createdTicks) {
+                lostAndFound.remove(playerId, positions, createdTicks);
+            }
+        });
+        if (replayed > 0) {
+            LOGGER.info("[TombstoneStorage] {} 回放了 {} 条墓碑日志", dimension.getValue(), replayed);
+            markDirty();
+        }
+
+        // 放置后已保存到存档中的墓碑，其添加记录可能已随旧日志删除
+        pending.values().removeIf(p -> hasEntryCreatedAt(p.playerId(), p.capturedTick()));
+        if (!pending.isEmpty()) {
+            LOGGER.info("[TombstoneStorage] {} 有 {} 个崩溃前尚未放置的墓碑，重新加入放置队列", dimension.getValue(), pending.size());
+            pending.values().forEach(SimpleTombstone::requeue);
+        }
+    }
+
+    private record PendingKey(UUID playerId, long capturedTick) {
+    }
+
+    /**
+     * 取出玩家在本维度失物招领中的全部物品
+     * @return 取出的物品，没有物品时返回空列表
+     */
+    public List<TombstoneLostAndFound.Batch> claimLostAndFound(UUID playerId) {
+        List<TombstoneLostAndFound.Batch> taken = lostAndFound.take(playerId);
+        if (taken.isEmpty()) return taken;
+        if (journal != null && config.get().journalEnabled()) {
+            long[] positions = new long[taken.size()];
+            long[] createdTicks = new long[taken.size()];
+            for (int i = 0; i < taken.size(); i++) {
+                positions[i] = taken.get(i).pos();
+                createdTicks[i] = taken.get(i).createdTick();
+            }
+            journal.logClaim(playerId, positions, createdTicks);
+        }
+        markDirty();
+        return taken;
+    }
+
+    /**
+     * 记录延迟放置的墓碑已取走物品，入队前调用；放置时的添加记录会与之抵消
+     */
+    public void logPending(TombstoneQueue.Pending pending) {
+        if (journal != null && config.get().journalEnabled()) {
+            journal.logPending(pending.deathPos(), pending.playerId(), pending.capturedTick(),
+                    TombstoneItems.encode(pending.items()), pending.slots());
+        }
+    }
+
+    /**
+     * 记录尚未放置的墓碑已直接归还给玩家
+     */
+    public void resolvePending(TombstoneQueue.Pending pending) {
+        if (journal != null && config.get().journalEnabled()) {
+            journal.logResolve(pending.deathPos(), pending.playerId(), pending.capturedTick());
+        }
+    }
+
+    private boolean hasEntryCreatedAt(UUID playerId, long createdTick) {
+        ArrayDeque<TombstoneEntry> entries = playerTombstones.get(playerId);
+        if (entries == null) return false;
+        for (TombstoneEntry entry : entries) {
+            if (entry.createdTick() == createdTick) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 获取位置所在区域的分片，尚未读取时从磁盘读取或新建
+     */
+    private TombstoneShard shardFor(BlockPos pos) {
+        long region = TombstoneShard.regionKey(pos);
+        TombstoneShard shard = loadedShards.get(region);
+        if (shard == null) {
+            shard = stateManager.getOrCreate(
+                    new PersistentState.Type<>(
+                            () -> new TombstoneShard(tombstoneData, config),
+                            nbt -> TombstoneShard.fromNbt(nbt, tombstoneData, config),
+                            null
+                    ),
+                    TombstoneShard.fileId(region)
+            );
+            loadedShards.put(region, shard);
+        }
+        return shard;
     }
 
-    public void addTombstone(BlockPos pos, SimpleTombstone.PlayerTombstoneData data) {
-        LOGGER.info("[TombstoneStorage] 添加墓碑数据: {}", pos.toShortString());
+    /**
+     * @return 因与同位置的墓碑合并或超出玩家墓碑上限而不再单独存在的墓碑数，
+     *         调用方据此更新待领取的墓碑数量
+     */
+    public int addTombstone(BlockPos pos, SimpleTombstone.PlayerTombstoneData data) {
+        if (config.get().journalEnabled()) {
+            journal.logAdd(pos, data.playerId(), data.createdTick(), data.writeItems(), data.slots());
+        }
+        return addInternal(pos, data);
+    }
 
-        List<SimpleTombstone.PlayerTombstoneData> existingList = tombstoneData.getOrDefault(pos, new ArrayList<>());
+    /**
+     * 回放添加操作，分片中已有同一时间或更新的数据时说明操作已经保存过
+     */
+    private void replayAdd(BlockPos pos, SimpleTombstone.PlayerTombstoneData data) {
+        shardFor(pos);
+        SimpleTombstone.PlayerTombstoneData existing = findData(pos, data.playerId());
+        if (existing != null && existing.createdTick() >= data.createdTick()) {
+            // 分片先于头文件写盘，头文件中可能缺少这条记录
+            if (!hasEntry(data.playerId(), pos)) {
+                addEntry(data.playerId(), pos, existing.createdTick());
+            }
+            return;
+        }
+        addInternal(pos, data);
+    }
+
+    private int addInternal(BlockPos pos, SimpleTombstone.PlayerTombstoneData data) {
+        TombstoneShard shard = shardFor(pos);
+        List<SimpleTombstone.PlayerTombstoneData> existingList = tombstoneData.getOrCreate(pos);
         boolean merged = false;
 
         for (int i = 0; i < existingList.size(); i++) {
             SimpleTombstone.PlayerTombstoneData existing = existingList.get(i);
             if (existing.playerId().equals(data.playerId())) {
-                List<ItemStack> mergedItems = new ArrayList<>(existing.items());
-                mergedItems.addAll(data.items());
-                existingList.set(i, new SimpleTombstone.PlayerTombstoneData(existing.playerId(), mergedItems));
-                LOGGER.info("[TombstoneStorage] 合并同玩家墓碑数据: {}", pos.toShortString());
+                existingList.set(i, SimpleTombstone.PlayerTombstoneData.merge(existing, data));
+                // 合并后的墓碑视为最新的墓碑
+                removeEntry(data.playerId(), pos);
                 merged = true;
                 break;
             }
@@ -56,92 +330,558 @@ public class TombstoneStorage extends PersistentState {
 
         if (!merged) {
             existingList.add(data);
-            LOGGER.info("[TombstoneStorage] 添加新玩家墓碑记录: {}", pos.toShortString());
         }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("[TombstoneStorage] {}墓碑数据: {}", merged ? "合并同玩家" : "添加", pos.toShortString());
+        }
+        shard.track(pos);
+        ArrayDeque<TombstoneEntry> entries = addEntry(data.playerId(), pos, data.createdTick());
 
-        tombstoneData.put(pos, existingList);
+        // 限制玩家最大墓碑数，按创建顺序淘汰最老的墓碑
+        int evicted = 0;
+        int maxTombstones = config.get().maxTombstonesPerPlayer();
+        if (maxTombstones > 0) {
+            while (entries.size() > maxTombstones) {
+                evicted++;
+                TombstoneEntry oldest = entries.pollFirst();
+                unindexEntry(oldest);
+                removeData(oldest.pos(), data.playerId());
+                TombstoneStats.increment(TombstoneStats.Counter.EVICTED);
+                LOGGER.warn("达到玩家墓碑上限({})，删除最老墓碑: {}", maxTombstones, oldest.pos().toShortString());
+            }
+        }
 
-        // 限制玩家最大墓碑数
-        if (config.maxTombstonesPerPlayer > 0) {
-            List<Map.Entry<BlockPos, SimpleTombstone.PlayerTombstoneData>> all = new ArrayList<>();
-            for (Map.Entry<BlockPos, List<SimpleTombstone.PlayerTombstoneData>> entry : tombstoneData.entrySet()) {
-                for (SimpleTombstone.PlayerTombstoneData d : entry.getValue()) {
-                    if (d.playerId().equals(data.playerId())) {
-                        all.add(new AbstractMap.SimpleEntry<>(entry.getKey(), d));
-                    }
-                }
+        markDirty();
+        return merged ? evicted + 1 : evicted;
+    }
+
+    public void removeTombstone(BlockPos pos, UUID playerId) {
+        if (getTombstones(pos) != null) {
+            if (config.get().journalEnabled()) {
+                journal.logRemove(pos, playerId);
             }
+            removeInternal(pos, playerId);
+        }
+    }
 
-            if (all.size() > config.maxTombstonesPerPlayer) {
-                Map.Entry<BlockPos, SimpleTombstone.PlayerTombstoneData> oldest = all.get(0);
-                tombstoneData.get(oldest.getKey()).remove(oldest.getValue());
-                if (tombstoneData.get(oldest.getKey()).isEmpty()) {
-                    tombstoneData.remove(oldest.getKey());
-                }
-                LOGGER.warn("达到玩家墓碑上限({})，删除最老墓碑: {}", config.maxTombstonesPerPlayer, oldest.getKey().toShortString());
+    private void removeInternal(BlockPos pos, UUID playerId) {
+        boolean removed = removeEntry(playerId, pos);
+        removed |= removeData(pos, playerId);
+        if (removed) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("[TombstoneStorage] 移除玩家 {} 的墓碑数据: {}", playerId, pos.toShortString());
             }
+            markDirty();
         }
+    }
 
-        markDirty();
+    private boolean removeData(BlockPos pos, UUID playerId) {
+        TombstoneShard shard = shardFor(pos);
+        if (tombstoneData.remove(pos, playerId) == 0) return false;
+        shard.untrack(pos);
+        return true;
     }
 
-    public void removeTombstone(BlockPos pos, UUID playerId) {
+    private SimpleTombstone.PlayerTombstoneData findData(BlockPos pos, UUID playerId) {
         List<SimpleTombstone.PlayerTombstoneData> list = tombstoneData.get(pos);
         if (list != null) {
-            list.removeIf(data -> data.playerId().equals(playerId));
-            if (list.isEmpty()) {
-                tombstoneData.remove(pos);
+            for (SimpleTombstone.PlayerTombstoneData data : list) {
+                if (data.playerId().equals(playerId)) return data;
+            }
+        }
+        return null;
+    }
+
+    private ArrayDeque<TombstoneEntry> addEntry(UUID playerId, BlockPos pos, long createdTick) {
+        long ttl = config.get().expiryTicks();
+        return addEntry(playerId, pos, createdTick, ttl > 0 ? createdTick + ttl : 0);
+    }
+
+    private ArrayDeque<TombstoneEntry> addEntry(UUID playerId, BlockPos pos, long createdTick, long expireTick) {
+        ArrayDeque<TombstoneEntry> entries = playerTombstones.computeIfAbsent(playerId, k -> new ArrayDeque<>());
+        TombstoneEntry entry = new TombstoneEntry(dimension, playerId, pos, createdTick, expireTick);
+        entries.addLast(entry);
+        queryIndex.add(entry);
+        if (expireTick > 0) {
+            expiryWheel.schedule(new ExpiryWheel.Timer(pos.asLong(), playerId, expireTick));
+        }
+        regionCounts.addTo(TombstoneShard.regionKey(pos), 1);
+        indexSize.incrementAndGet();
+        positionFilter.add(pos.asLong());
+        return entries;
+    }
+
+    private boolean hasEntry(UUID playerId, BlockPos pos) {
+        return findEntry(playerId, pos) != null;
+    }
+
+    private TombstoneEntry findEntry(UUID playerId, BlockPos pos) {
+        ArrayDeque<TombstoneEntry> entries = playerTombstones.get(playerId);
+        if (entries == null) return null;
+        for (TombstoneEntry entry : entries) {
+            if (entry.pos().equals(pos)) return entry;
+        }
+        return null;
+    }
+
+    private boolean removeEntry(UUID playerId, BlockPos pos) {
+        ArrayDeque<TombstoneEntry> entries = playerTombstones.get(playerId);
+        if (entries == null) return false;
+        boolean removed = false;
+        for (Iterator<TombstoneEntry> iterator = entries.iterator(); iterator.hasNext(); ) {
+            TombstoneEntry entry = iterator.next();
+            if (entry.pos().equals(pos)) {
+                iterator.remove();
+                unindexEntry(entry);
+                removed = true;
+            }
+        }
+        if (entries.isEmpty()) {
+            playerTombstones.remove(playerId);
+        }
+        return removed;
+    }
+
+    /**
+     * 从玩家墓碑索引以外的各个索引和计数中移除一条记录
+     */
+    private void unindexEntry(TombstoneEntry entry) {
+        BlockPos pos = entry.pos();
+        queryIndex.remove(entry);
+        indexSize.decrementAndGet();
+        positionFilter.remove(pos.asLong());
+        long region = TombstoneShard.regionKey(pos);
+        if (regionCounts.addTo(region, -1) <= 1) {
+            regionCounts.remove(region);
+        }
+    }
+
+    /**
+     * 获取位置上的墓碑数据，所在区域没有墓碑时不会读取分片
+     * @return 墓碑数据列表，没有墓碑时返回 null
+     */
+    public List<SimpleTombstone.PlayerTombstoneData> getTombstones(BlockPos pos) {
+        if (!regionCounts.containsKey(TombstoneShard.regionKey(pos))) return null;
+        shardFor(pos);
+        return tombstoneData.get(pos);
+    }
+
+    /**
+     * 获取玩家的墓碑记录，按创建顺序从旧到新排列
+     */
+    public Collection<TombstoneEntry> getPlayerTombstones(UUID playerId) {
+        ArrayDeque<TombstoneEntry> entries = playerTombstones.get(playerId);
+        return entries == null ? List.of() : Collections.unmodifiableCollection(entries);
+    }
+
+    public int getTombstoneCount(UUID playerId) {
+        ArrayDeque<TombstoneEntry> entries = playerTombstones.get(playerId);
+        return entries == null ? 0 : entries.size();
+    }
+
+    /**
+     * 对每个有墓碑的玩家调用一次，用于启动时恢复待领取状态
+     */
+    public void forEachPlayer(ObjIntConsumer<UUID> consumer) {
+        for (Map.Entry<UUID, ArrayDeque<TombstoneEntry>> entry : playerTombstones.entrySet()) {
+            consumer.accept(entry.getKey(), entry.getValue().size());
+        }
+    }
+
+    /**
+     * 查找以 center 为中心、半径 radius 的立方体范围内属于指定玩家的墓碑位置
+     * 只遍历该玩家在本维度的墓碑记录，不读取分片，开销与世界中的墓碑总数无关；没有匹配时返回不可变空列表
+     */
+    public List<BlockPos> findPlayerTombstones(UUID playerId, BlockPos center, int radius) {
+        ArrayDeque<TombstoneEntry> entries = playerTombstones.get(playerId);
+        if (entries == null) return List.of();
+        List<BlockPos> result = null;
+        for (TombstoneEntry entry : entries) {
+            BlockPos pos = entry.pos();
+            if (Math.abs(pos.getX() - center.getX()) <= radius
+                    && Math.abs(pos.getY() - center.getY()) <= radius
+                    && Math.abs(pos.getZ() - center.getZ()) <= radius) {
+                if (result == null) result = new ArrayList<>(1);
+                result.add(pos);
+            }
+        }
+        return result == null ? List.of() : result;
+    }
+
+    /*
+     * 管理查询：结果均为惰性 Stream，由索引直接产生，配合 TombstoneQueryIndex.page 分页，
+     * 不读取分片也不复制结果集；必须在服务器线程中立即消费
+     */
+
+    /**
+     * 玩家在本维度的墓碑记录，从旧到新排列
+     */
+    public Stream<TombstoneEntry> queryByPlayer(UUID playerId) {
+        ArrayDeque<TombstoneEntry> entries = playerTombstones.get(playerId);
+        return entries == null ? Stream.empty() : entries.stream();
+    }
+
+    /**
+     * 范围内的墓碑记录，顺序不固定
+     */
+    public Stream<TombstoneEntry> queryInBox(BlockBox box) {
+        return queryIndex.inBox(box);
+    }
+
+    /**
+     * 以 center 为中心、半径 radius（欧氏距离）内的墓碑记录，顺序不固定
+     */
+    public Stream<TombstoneEntry> queryInRadius(BlockPos center, int radius) {
+        return queryIndex.inRadius(center, radius);
+    }
+
+    /**
+     * 存在时间不少于 minAgeTicks 的墓碑记录，从旧到新排列
+     * @param now 当前世界时间
+     */
+    public Stream<TombstoneEntry> queryOlderThan(long now, long minAgeTicks) {
+        return queryIndex.createdBefore(now - minAgeTicks);
+    }
+
+    /**
+     * 每个世界 tick 调用一次：处理刚加载的区块中等待的花盆和掉落，并触发到期的墓碑
+     * @param onExpired 墓碑过期并移除后调用
+     */
+    public void tickExpiry(ServerWorld world, BiConsumer<BlockPos, UUID> onExpired) {
+        if (!readyChunks.isEmpty()) {
+            processReadyChunks(world, onExpired);
+        }
+
+        long ttl = config.get().expiryTicks();
+        if (ttl <= 0) {
+            // 关闭过期期间创建的记录没有到期时间，重新开启时需要补上
+            deadlinesAssigned = false;
+            return;
+        }
+        long now = world.getTime();
+        if (!deadlinesAssigned) {
+            assignMissingDeadlines(now + ttl);
+            deadlinesAssigned = true;
+        }
+        expiryWheel.advance(now, timer -> expire(world, timer, onExpired));
+    }
+
+    /**
+     * 为没有到期时间的记录补上到期时间，保持记录的先后顺序
+     */
+    private void assignMissingDeadlines(long expireTick) {
+        for (Map.Entry<UUID, ArrayDeque<TombstoneEntry>> playerEntry : playerTombstones.entrySet()) {
+            ArrayDeque<TombstoneEntry> entries = playerEntry.getValue();
+            boolean missing = false;
+            for (TombstoneEntry entry : entries) {
+                if (entry.expireTick() == 0) {
+                    missing = true;
+                    break;
+                }
             }
-            LOGGER.info("[TombstoneStorage] 移除玩家 {} 的墓碑数据: {}", playerId, pos.toShortString());
+            if (!missing) continue;
+
+            ArrayDeque<TombstoneEntry> updated = new ArrayDeque<>(entries.size());
+            for (TombstoneEntry entry : entries) {
+                if (entry.expireTick() == 0) {
+                    queryIndex.remove(entry);
+                    entry = new TombstoneEntry(entry.dimension(), entry.playerId(), entry.pos(), entry.createdTick(), expireTick);
+                    queryIndex.add(entry);
+                    expiryWheel.schedule(new ExpiryWheel.Timer(entry.pos().asLong(), playerEntry.getKey(), expireTick));
+                }
+                updated.addLast(entry);
+            }
+            playerEntry.setValue(updated);
             markDirty();
         }
     }
 
-    public Map<BlockPos, List<SimpleTombstone.PlayerTombstoneData>> getTombstoneData() {
-        return tombstoneData;
+    /**
+     * 处理一个到期的计时器，墓碑已被领取或合并（到期时间不同）时忽略
+     * 移入失物招领和直接删除时写入过期日志，失物招领和墓碑记录一起回放；
+     * 掉落的物品随区块保存，无法与日志保持一致，因此掉落时不写日志：崩溃后墓碑恢复并再次过期，物品最多重复掉落而不会丢失
+     */
+    private void expire(ServerWorld world, ExpiryWheel.Timer timer, BiConsumer<BlockPos, UUID> onExpired) {
+        BlockPos pos = BlockPos.fromLong(timer.pos());
+        TombstoneEntry entry = findEntry(timer.playerId(), pos);
+        if (entry == null || entry.expireTick() != timer.deadline()) return;
+
+        boolean chunkLoaded = world.getChunkManager().isChunkLoaded(
+                ChunkSectionPos.getSectionCoord(pos.getX()), ChunkSectionPos.getSectionCoord(pos.getZ()));
+        TombstoneConfig.ExpiryAction action = config.get().expiryAction();
+        if (action == TombstoneConfig.ExpiryAction.DROP && !chunkLoaded) {
+            awaitingChunk.computeIfAbsent(chunkKey(pos), k -> new ArrayList<>(1)).add(timer);
+            return;
+        }
+
+        shardFor(pos);
+        SimpleTombstone.PlayerTombstoneData data = findData(pos, timer.playerId());
+        NbtList lost = null;
+        if (data != null) {
+            switch (action) {
+                case DROP -> {
+                    // 数据可能正被后台保存线程编码，掉落时会拆分物品，因此复制一份
+                    for (ItemStack stack : data.items()) {
+                        ItemScatterer.spawn(world, pos.getX(), pos.getY(), pos.getZ(), stack.copy());
+                    }
+                }
+                case LOST_AND_FOUND -> lost = data.writeItems();
+                case DELETE -> {
+                }
+            }
+        }
+        if (action != TombstoneConfig.ExpiryAction.DROP && journal != null && config.get().journalEnabled()) {
+            journal.logExpire(pos, timer.playerId(), entry.createdTick(), lost);
+        }
+        if (lost != null) {
+            lostAndFound.add(timer.playerId(), pos.asLong(), entry.createdTick(), lost);
+        }
+        removeInternal(pos, timer.playerId());
+
+        // 同一位置还有其他玩家的墓碑时保留花盆
+        if (!positionFilter.containsPos(pos.asLong())) {
+            if (chunkLoaded) {
+                removePot(world, pos);
+            } else {
+                addStalePot(pos);
+                markDirty();
+            }
+        }
+        onExpired.accept(pos, timer.playerId());
+        TombstoneStats.increment(TombstoneStats.Counter.EXPIRED);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("[TombstoneStorage] 玩家 {} 的墓碑 {} 已过期（{}）", timer.playerId(), pos.toShortString(), action);
+        }
+    }
+
+    private static void removePot(ServerWorld world, BlockPos pos) {
+        if (world.getBlockState(pos).getBlock() instanceof FlowerPotBlock) {
+            world.removeBlock(pos, false);
+        }
+    }
+
+    private static long chunkKey(BlockPos pos) {
+        return ChunkPos.toLong(ChunkSectionPos.getSectionCoord(pos.getX()), ChunkSectionPos.getSectionCoord(pos.getZ()));
+    }
+
+    private void addStalePot(BlockPos pos) {
+        stalePots.computeIfAbsent(chunkKey(pos), k -> new LongArrayList(1)).add(pos.asLong());
+    }
+
+    /**
+     * 区块加载时调用，区块中有等待处理的花盆或掉落时留到下一次世界 tick 处理，避免在加载过程中修改方块
+     */
+    public void onChunkLoad(long chunk) {
+        if (stalePots.containsKey(chunk) || awaitingChunk.containsKey(chunk)) {
+            readyChunks.add(chunk);
+        }
+    }
+
+    private void processReadyChunks(ServerWorld world, BiConsumer<BlockPos, UUID> onExpired) {
+        long[] chunks = readyChunks.toLongArray();
+        readyChunks.clear();
+        for (long chunk : chunks) {
+            // 加载后又立即卸载的区块等下次加载再处理
+            if (!world.getChunkManager().isChunkLoaded(ChunkPos.getPackedX(chunk), ChunkPos.getPackedZ(chunk))) continue;
+
+            LongArrayList pots = stalePots.remove(chunk);
+            if (pots != null) {
+                for (int i = 0; i < pots.size(); i++) {
+                    long pot = pots.getLong(i);
+                    // 这期间同一位置可能又放置了新的墓碑
+                    if (!positionFilter.containsPos(pot)) {
+                        removePot(world, BlockPos.fromLong(pot));
+                    }
+                }
+                markDirty();
+            }
+
+            List<ExpiryWheel.Timer> timers = awaitingChunk.remove(chunk);
+            if (timers != null) {
+                for (ExpiryWheel.Timer timer : timers) {
+                    expire(world, timer, onExpired);
+                }
+            }
+        }
     }
 
+    /**
+     * 头文件只写入墓碑的位置、玩家和创建时间，按玩家墓碑索引的顺序排列
+     */
     @Override
     public NbtCompound writeNbt(NbtCompound nbt) {
         NbtList tombstoneList = new NbtList();
-        for (Map.Entry<BlockPos, List<SimpleTombstone.PlayerTombstoneData>> entry : tombstoneData.entrySet()) {
-            for (SimpleTombstone.PlayerTombstoneData data : entry.getValue()) {
+        for (Map.Entry<UUID, ArrayDeque<TombstoneEntry>> playerEntry : playerTombstones.entrySet()) {
+            for (TombstoneEntry entry : playerEntry.getValue()) {
                 NbtCompound tombstoneTag = new NbtCompound();
-                tombstoneTag.put(KEY_POS, NbtHelper.fromBlockPos(entry.getKey()));
-                tombstoneTag.putUuid(KEY_PLAYER_ID, data.playerId());
-
-                NbtList itemList = new NbtList();
-                for (ItemStack stack : data.items()) {
-                    itemList.add(stack.writeNbt(new NbtCompound()));
+                tombstoneTag.put(KEY_POS, NbtHelper.fromBlockPos(entry.pos()));
+                tombstoneTag.putUuid(KEY_PLAYER_ID, playerEntry.getKey());
+                tombstoneTag.putLong(KEY_CREATED_TICK, entry.createdTick());
+                if (entry.expireTick() > 0) {
+                    tombstoneTag.putLong(KEY_EXPIRE_TICK, entry.expireTick());
                 }
-                tombstoneTag.put(KEY_ITEMS, itemList);
-
                 tombstoneList.add(tombstoneTag);
             }
         }
         nbt.put(KEY_TOMBSTONES, tombstoneList);
+
+        if (!stalePots.isEmpty()) {
+            LongArrayList pots = new LongArrayList();
+            for (LongArrayList chunkPots : stalePots.values()) {
+                pots.addAll(chunkPots);
+            }
+            nbt.putLongArray(KEY_STALE_POTS, pots.toLongArray());
+        }
+
+        if (!lostAndFound.isEmpty()) {
+            nbt.put(KEY_LOST_AND_FOUND, lostAndFound.writeNbt());
+        }
         return nbt;
     }
 
-    public static TombstoneStorage fromNbt(NbtCompound nbt) {
-        TombstoneStorage storage = new TombstoneStorage();
+    @Override
+    public boolean isDirty() {
+        return super.isDirty() || saveFailed.get() || (journal != null && journal.hasWriteFailure());
+    }
+
+    /**
+     * 依次保存有改动的分片和头文件，全部写盘后删除已被本次保存覆盖的日志和空分片文件
+     * 同步和异步保存的任何一次写入失败都会保留日志和这些文件，等下次保存再删除
+     */
+    @Override
+    public void save(File file) {
+        if (!isDirty()) return;
+
+        long saveStart = System.nanoTime();
+        long failuresBefore = TombstoneSaver.getFailureCount();
+        File directory = file.getParentFile();
+        List<File> emptyShards = new ArrayList<>();
+        for (ObjectIterator<Long2ObjectMap.Entry<TombstoneShard>> it = loadedShards.long2ObjectEntrySet().iterator(); it.hasNext(); ) {
+            Long2ObjectMap.Entry<TombstoneShard> entry = it.next();
+            File shardFile = new File(directory, TombstoneShard.fileId(entry.getLongKey()) + ".dat");
+            TombstoneShard shard = entry.getValue();
+            if (shard.isEmpty()) {
+                // 区域中已没有墓碑，删除分片文件而不是写入空分片；之后再有墓碑时会重新创建
+                shard.setDirty(false);
+                it.remove();
+                emptyShards.add(shardFile);
+            } else {
+                shard.save(shardFile);
+            }
+        }
+        if (!orphanShardsSwept) {
+            collectOrphanShards(directory, emptyShards);
+            orphanShardsSwept = true;
+        }
+        // 保存完成时之前的操作要么已在快照中，要么已在日志中写盘；写盘失败的记录由本次快照覆盖
+        if (journal != null) {
+            TombstoneJournal.awaitPendingWrites();
+            journal.clearWriteFailure();
+        }
+        long coveredGeneration = journal == null ? -1 : journal.rotate();
+        if (journal != null) {
+            // 仍在队列中的墓碑不在快照中，在新的一代中重新记录，旧日志删除后崩溃也不会丢失
+            SimpleTombstone.getQueue().forEach(dimension, this::logPending);
+        }
+
+        // 头文件不含物品，直接在主线程生成，异步保存时只把写盘交给后台线程
+        long start = System.nanoTime();
+        NbtCompound root = new NbtCompound();
+        root.put("data", writeNbt(new NbtCompound()));
+        NbtHelper.putDataVersion(root);
+        long snapshotNanos = System.nanoTime() - start;
+        if (config.get().asyncSave()) {
+            setDirty(false);
+            saveFailed.set(false);
+            TombstoneSaver.saveAsync(file, snapshotNanos, () -> root, () -> saveFailed.set(true));
+        } else if (TombstoneSaver.saveSync(file, root)) {
+            setDirty(false);
+            saveFailed.set(false);
+        }
+        TombstoneStats.record(TombstoneStats.Metric.SAVE, saveStart);
+
+        if (journal != null || !emptyShards.isEmpty()) {
+            TombstoneJournal covered = journal;
+            TombstoneSaver.runAfterPendingSaves(() -> {
+                // 同步保存的失败此时已经计入；异步保存的写入都已完成，删除的分片不会被旧的写入重新创建
+                if (TombstoneSaver.getFailureCount() == failuresBefore) {
+                    deleteShardFiles(emptyShards);
+                    if (covered != null) covered.deleteBefore(coveredGeneration);
+                } else {
+                    // 保留日志和空分片文件，下次保存时重新写入，并重新找出没有墓碑的分片删除
+                    saveFailed.set(true);
+                    orphanShardsSwept = false;
+                }
+            });
+        }
+    }
+
+    /**
+     * 找出目录中不属于任何墓碑记录的分片文件（如保存失败后残留的空分片），每次启动只检查一次
+     */
+    private void collectOrphanShards(File directory, List<File> result) {
+        File[] files = directory.listFiles((dir, name) -> TombstoneShard.isShardFile(name));
+        if (files == null) return;
+        Set<String> live = new HashSet<>();
+        for (long region : regionCounts.keySet()) {
+            live.add(TombstoneShard.fileId(region) + ".dat");
+        }
+        for (Long2ObjectMap.Entry<TombstoneShard> entry : loadedShards.long2ObjectEntrySet()) {
+            live.add(TombstoneShard.fileId(entry.getLongKey()) + ".dat");
+        }
+        for (File shardFile : files) {
+            if (!live.contains(shardFile.getName())) {
+                result.add(shardFile);
+            }
+        }
+    }
+
+    private static void deleteShardFiles(List<File> files) {
+        for (File shardFile : files) {
+            try {
+                Files.deleteIfExists(shardFile.toPath());
+            } catch (IOException e) {
+                LOGGER.error("删除空的墓碑分片 {} 时发生错误", shardFile.getName(), e);
+            }
+        }
+    }
+
+    public static TombstoneStorage fromNbt(NbtCompound nbt, PersistentStateManager stateManager, RegistryKey<World> dimension) {
+        long start = System.nanoTime();
+        TombstoneStorage storage = new TombstoneStorage(stateManager, dimension);
         NbtList tombstoneList = nbt.getList(KEY_TOMBSTONES, NbtElement.COMPOUND_TYPE);
+        boolean migrated = false;
 
         for (NbtElement element : tombstoneList) {
             NbtCompound tombstoneTag = (NbtCompound) element;
             BlockPos pos = NbtHelper.toBlockPos(tombstoneTag.getCompound(KEY_POS));
             UUID playerId = tombstoneTag.getUuid(KEY_PLAYER_ID);
+            // 旧版本存档没有创建时间，按 0 处理并保持文件中的顺序
+            long createdTick = tombstoneTag.getLong(KEY_CREATED_TICK);
 
-            List<ItemStack> items = new ArrayList<>();
-            NbtList itemList = tombstoneTag.getList(KEY_ITEMS, NbtElement.COMPOUND_TYPE);
-            for (NbtElement itemElement : itemList) {
-                items.add(ItemStack.fromNbt((NbtCompound) itemElement));
+            // 旧版本的单文件存档直接包含物品，迁移到对应的分片中
+            if (tombstoneTag.contains(KEY_ITEMS, NbtElement.LIST_TYPE)) {
+                NbtList itemList = TombstoneItems.intern(tombstoneTag.getList(KEY_ITEMS, NbtElement.COMPOUND_TYPE));
+                TombstoneShard shard = storage.shardFor(pos);
+                storage.tombstoneData.getOrCreate(pos).add(SimpleTombstone.PlayerTombstoneData.fromNbt(playerId, itemList, null, createdTick));
+                shard.track(pos);
+                migrated = true;
             }
 
-            storage.tombstoneData.computeIfAbsent(pos, k -> new ArrayList<>())
-                    .add(new SimpleTombstone.PlayerTombstoneData(playerId, items));
+            storage.addEntry(playerId, pos, createdTick, tombstoneTag.getLong(KEY_EXPIRE_TICK));
+        }
+
+        for (long pot : nbt.getLongArray(KEY_STALE_POTS)) {
+            storage.addStalePot(BlockPos.fromLong(pot));
+        }
+        storage.lostAndFound.readNbt(nbt.getList(KEY_LOST_AND_FOUND, NbtElement.COMPOUND_TYPE));
+
+        if (migrated) {
+            LOGGER.info("[TombstoneStorage] 已将旧版墓碑存档迁移为 {} 个区域分片", storage.loadedShards.size());
+            storage.markDirty();
         }
 
+        TombstoneStats.record(TombstoneStats.Metric.LOAD, start);
         return storage;
     }
-}
\ No newline at end of file
+}